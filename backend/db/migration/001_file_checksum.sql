@@ -0,0 +1,3 @@
+-- Integrity scrubber: SHA-256 of the stored bytes, recorded at upload time.
+-- Files uploaded before this migration have a null checksum until the scrubber backfills it.
+ALTER TABLE files ADD COLUMN IF NOT EXISTS checksum varchar(64);
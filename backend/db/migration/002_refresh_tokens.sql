@@ -0,0 +1,11 @@
+-- Rotating refresh tokens. Only a SHA-256 of each token is stored.
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token_hash varchar(64) NOT NULL,
+    issued_at timestamp(6) NOT NULL,
+    expires_at timestamp(6) NOT NULL,
+    revoked boolean NOT NULL,
+    user_id bigint NOT NULL,
+    CONSTRAINT uk_refresh_tokens_token_hash UNIQUE (token_hash),
+    CONSTRAINT fk_refresh_tokens_user_id FOREIGN KEY (user_id) REFERENCES users (id)
+);
@@ -0,0 +1,14 @@
+-- Download/view audit trail, written in batches by AccessLog
+CREATE TABLE IF NOT EXISTS file_access_log (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_id bigint NOT NULL,
+    user_id bigint NOT NULL,
+    access_type varchar(16) NOT NULL,
+    accessed_at timestamp(6) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_file_access_log_file_id ON file_access_log (file_id);
+CREATE INDEX IF NOT EXISTS idx_file_access_log_user_id ON file_access_log (user_id);
+
+-- Per-file counters maintained by the same batches
+ALTER TABLE files ADD COLUMN IF NOT EXISTS download_count bigint NOT NULL DEFAULT 0;
+ALTER TABLE files ADD COLUMN IF NOT EXISTS view_count bigint NOT NULL DEFAULT 0;
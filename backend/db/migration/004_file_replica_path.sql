@@ -0,0 +1,2 @@
+-- Second copy on another storage volume when replication is enabled
+ALTER TABLE files ADD COLUMN IF NOT EXISTS replica_path varchar(255);
@@ -0,0 +1,2 @@
+-- Set once the bytes of a soft-deleted file were removed after the retention period
+ALTER TABLE files ADD COLUMN IF NOT EXISTS blob_purged boolean NOT NULL DEFAULT false;
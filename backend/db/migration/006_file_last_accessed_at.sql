@@ -0,0 +1,2 @@
+-- Last download or view, null if never read; decides when a file moves to the cold tier
+ALTER TABLE files ADD COLUMN IF NOT EXISTS last_accessed_at timestamp(6);
@@ -0,0 +1,3 @@
+-- Expiring files: null keeps a file until its owner deletes it
+ALTER TABLE files ADD COLUMN IF NOT EXISTS expires_at timestamp(6);
+CREATE INDEX IF NOT EXISTS idx_files_expires_at ON files (expires_at);
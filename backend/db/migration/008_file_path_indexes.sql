@@ -0,0 +1,4 @@
+-- Reference counts of shared blobs, tier moves and rebalancing look files up by stored location.
+-- On a partitioned files table the indexes are created on every partition.
+CREATE INDEX IF NOT EXISTS idx_files_file_path ON files (file_path);
+CREATE INDEX IF NOT EXISTS idx_files_replica_path ON files (replica_path);
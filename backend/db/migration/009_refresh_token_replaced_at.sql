@@ -0,0 +1,2 @@
+-- When a refresh token was rotated, to tell parallel refreshes from reuse of a stolen token
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS replaced_at timestamp(6);
@@ -0,0 +1,96 @@
+#!/usr/bin/env bash
+# Compares time-to-first-response and resident memory of the backend across startup modes.
+#
+#   ./gradlew bootJar                                   -> plain JVM
+#   ./gradlew -PfastStartup bootJar cdsArchive          -> JVM + AOT, JVM + AOT + CDS
+#   ./gradlew -PfastStartup nativeCompile               -> native image (GraalVM)
+#
+# build/cds/application.jar is also started without the archive, which isolates the effect of CDS
+# and stands in for the plain JVM when there is no boot jar. CDS_DIR points at another layout.
+#
+# Modes whose artifacts are missing are skipped. Database settings come from the environment / .env
+# exactly as for a normal start. Usage: scripts/startup-comparison.sh [runs] [port]
+set -uo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS="${1:-5}"
+PORT="${2:-18080}"
+BOOT_JAR="$(ls build/libs/*.jar 2>/dev/null | grep -v -- '-plain.jar' | head -n 1)"
+CDS_DIR="${CDS_DIR:-build/cds}"
+NATIVE_BIN="build/native/nativeCompile/filesharing-backend"
+
+# grep without -q: an early exit would fail unzip with SIGPIPE under pipefail
+has_aot() {
+  unzip -l "$1" | grep '__ApplicationContextInitializer' >/dev/null
+}
+
+# The archive records the class path relative to build/cds, so the flat layout is started from there
+in_cds_dir() {
+  cd "$CDS_DIR" && exec "$@"
+}
+
+now_ms() {
+  date +%s%3N
+}
+
+# Starts a command, waits until the port answers any HTTP request, records elapsed ms and RSS
+measure() {
+  local label="$1"
+  shift
+  local total_ms=0 total_rss=0 ok=0
+
+  for ((i = 1; i <= RUNS; i++)); do
+    local start pid elapsed rss
+    start=$(now_ms)
+    "$@" --server.port="$PORT" >/dev/null 2>&1 &
+    pid=$!
+
+    while ! curl -s -o /dev/null "http://localhost:${PORT}/actuator/health"; do
+      if ! kill -0 "$pid" 2>/dev/null; then
+        echo "$label: process exited before accepting requests" >&2
+        continue 2
+      fi
+      sleep 0.05
+    done
+    elapsed=$(( $(now_ms) - start ))
+    rss=$(awk '/VmRSS/ { print $2 }' "/proc/${pid}/status" 2>/dev/null || echo 0)
+
+    kill "$pid" 2>/dev/null
+    wait "$pid" 2>/dev/null
+
+    total_ms=$((total_ms + elapsed))
+    total_rss=$((total_rss + rss))
+    ok=$((ok + 1))
+  done
+
+  if ((ok > 0)); then
+    printf '%-22s %12d %12d %6d\n' "$label" $((total_ms / ok)) $((total_rss / ok / 1024)) "$ok"
+  fi
+}
+
+printf '%-22s %12s %12s %6s\n' "mode" "ready (ms)" "RSS (MB)" "runs"
+
+if [[ -n "$BOOT_JAR" ]]; then
+  measure "jvm" java -jar "$BOOT_JAR"
+  if has_aot "$BOOT_JAR"; then
+    measure "jvm+aot" java -Dspring.aot.enabled=true -jar "$BOOT_JAR"
+  fi
+fi
+
+if [[ -f "$CDS_DIR/application.jar" ]]; then
+  AOT_FLAG=false
+  if has_aot "$CDS_DIR/application.jar"; then
+    AOT_FLAG=true
+  fi
+  measure "jvm flat (aot=$AOT_FLAG)" in_cds_dir java -Dspring.aot.enabled="$AOT_FLAG" -jar application.jar
+fi
+
+if [[ -f "$CDS_DIR/application.jsa" ]]; then
+  measure "jvm+cds (aot=$AOT_FLAG)" in_cds_dir java -XX:SharedArchiveFile=application.jsa \
+    -Dspring.aot.enabled="$AOT_FLAG" -jar application.jar
+fi
+
+if [[ -x "$NATIVE_BIN" ]]; then
+  measure "native" "$NATIVE_BIN"
+fi
@@ -0,0 +1,96 @@
+package com.filesharing.backend.archive;
+
+import com.filesharing.backend.tracing.RingBufferTraceExporter;
+import com.filesharing.backend.tracing.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Builds the same mixed batch with increasing compression parallelism and prints wall-clock speedup.
+// The batch mimics real traffic: many small documents, some medium files and a few large ones.
+public class ParallelZipBenchmark {
+
+    private static final String WORDS = "the quick brown fox jumps over a lazy dog file sharing batch archive ";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 3;
+        int warmups = 2;
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("--iterations".equals(args[i])) {
+                iterations = Integer.parseInt(args[i + 1]);
+            } else if ("--warmups".equals(args[i])) {
+                warmups = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        List<byte[]> batch = mixedBatch(new Random(42));
+        long totalBytes = batch.stream().mapToLong(data -> data.length).sum();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("Batch: %d files, %.1f MB, %d cores available%n", batch.size(), totalBytes / 1048576.0, cores);
+        System.out.printf("%-8s %12s %10s %12s%n", "threads", "wall ms", "speedup", "MB/s");
+
+        // No request is traced here, so every span is a no-op
+        Tracer tracer = new Tracer(0.0, Duration.ofDays(1), 0, new RingBufferTraceExporter(), new SimpleMeterRegistry());
+
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+            try (ParallelZipWriter writer = new ParallelZipWriter(threads, DataSize.ofKilobytes(512), 6, tracer)) {
+                for (int i = 0; i < warmups; i++) {
+                    run(writer, batch);
+                }
+                long elapsed = 0;
+                for (int i = 0; i < iterations; i++) {
+                    elapsed += run(writer, batch);
+                }
+                double millis = elapsed / (iterations * 1_000_000.0);
+                if (threads == 1) {
+                    baseline = millis;
+                }
+                System.out.printf("%-8d %12.1f %9.2fx %12.1f%n",
+                        threads, millis, baseline / millis, totalBytes / 1048576.0 / (millis / 1000));
+            }
+        }
+    }
+
+    private static long run(ParallelZipWriter writer, List<byte[]> batch) throws Exception {
+        List<ArchiveEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] data = batch.get(i);
+            entries.add(new ArchiveEntry("file-" + i + ".txt", () -> new ByteArrayInputStream(data)));
+        }
+        long start = System.nanoTime();
+        writer.write(entries, OutputStream.nullOutputStream());
+        return System.nanoTime() - start;
+    }
+
+    private static List<byte[]> mixedBatch(Random random) {
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            batch.add(content(random, 4 * 1024 + random.nextInt(60 * 1024)));
+        }
+        for (int i = 0; i < 20; i++) {
+            batch.add(content(random, 512 * 1024 + random.nextInt(1024 * 1024)));
+        }
+        for (int i = 0; i < 4; i++) {
+            batch.add(content(random, 10 * 1024 * 1024));
+        }
+        return batch;
+    }
+
+    // Text-like data with some random noise so it compresses roughly like real documents
+    private static byte[] content(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = random.nextInt(10) == 0
+                    ? (byte) random.nextInt(256)
+                    : (byte) WORDS.charAt(random.nextInt(WORDS.length()));
+        }
+        return data;
+    }
+}
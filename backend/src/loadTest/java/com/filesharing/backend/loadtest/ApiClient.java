@@ -0,0 +1,124 @@
+package com.filesharing.backend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Thin HTTP client for the endpoints under test. Response bodies of transfers are drained but not kept,
+// so timings include the full payload without the harness holding it in memory.
+public class ApiClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    public ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static class ApiException extends IOException {
+        private final int status;
+
+        ApiException(String operation, int status) {
+            super(operation + " failed with HTTP " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    public void register(String username, String password) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of(
+                "username", username,
+                "email", username + "@loadtest.local",
+                "password", password));
+        HttpResponse<Void> response = httpClient.send(jsonPost("/api/auth/register", body), HttpResponse.BodyHandlers.discarding());
+        // 400 means the account survived an earlier run against the same database, which is fine
+        if (response.statusCode() != 200 && response.statusCode() != 400) {
+            throw new ApiException("register", response.statusCode());
+        }
+    }
+
+    public String login(String username, String password) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("username", username, "password", password));
+        HttpResponse<byte[]> response = httpClient.send(jsonPost("/api/auth/login", body), HttpResponse.BodyHandlers.ofByteArray());
+        expectOk("login", response.statusCode());
+        return objectMapper.readTree(response.body()).get("token").asText();
+    }
+
+    public long upload(String token, String fileName, byte[] content) throws IOException, InterruptedException {
+        String boundary = "----loadtest" + UUID.randomUUID().toString().replace("-", "");
+        ByteArrayOutputStream multipart = new ByteArrayOutputStream(content.length + 512);
+        multipart.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        multipart.writeBytes(content);
+        multipart.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = authorized(token, "/api/files/upload")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipart.toByteArray()))
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        expectOk("upload", response.statusCode());
+        JsonNode savedFile = objectMapper.readTree(response.body());
+        return savedFile.get("id").asLong();
+    }
+
+    public void download(String token, long fileId) throws IOException, InterruptedException {
+        HttpRequest request = authorized(token, "/api/files/download/" + fileId).GET().build();
+        expectOk("download", httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    public void view(String token, long fileId) throws IOException, InterruptedException {
+        HttpRequest request = authorized(token, "/api/files/view/" + fileId).GET().build();
+        expectOk("view", httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    public void batchDownload(String token, List<Long> fileIds) throws IOException, InterruptedException {
+        HttpRequest request = authorized(token, "/api/files/batch-download")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of("fileIds", fileIds))))
+                .build();
+        expectOk("batch-download", httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    private HttpRequest jsonPost(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest.Builder authorized(String token, String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + token);
+    }
+
+    private void expectOk(String operation, int status) throws ApiException {
+        if (status != 200) {
+            throw new ApiException(operation, status);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.filesharing.backend.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation latency histograms (microseconds, 3 significant digits) plus error counters.
+// Printed as a summary table and written as .hgrm percentile files that HdrHistogram's plotter can read.
+public class LatencyReport {
+
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final Map<Scenario.Operation, Histogram> histograms = new EnumMap<>(Scenario.Operation.class);
+
+    private final Map<Scenario.Operation, LongAdder> errors = new EnumMap<>(Scenario.Operation.class);
+
+    private final LongAdder bytesTransferred = new LongAdder();
+
+    public LatencyReport() {
+        for (Scenario.Operation operation : Scenario.Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public void recordSuccess(Scenario.Operation operation, long elapsedNanos, long bytes) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        histograms.get(operation).recordValue(Math.min(micros, MAX_TRACKABLE_MICROS));
+        bytesTransferred.add(bytes);
+    }
+
+    public void recordError(Scenario.Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    public void print(PrintStream out, Scenario scenario, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        long totalRequests = 0;
+        long totalErrors = 0;
+
+        out.println();
+        out.println("Scenario " + scenario);
+        out.println(String.format(Locale.ROOT, "%-15s %9s %9s %7s %9s %9s %9s %9s %9s",
+                "operation", "count", "ops/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        for (Scenario.Operation operation : Scenario.Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            long count = histogram.getTotalCount();
+            long errorCount = errors.get(operation).sum();
+            totalRequests += count;
+            totalErrors += errorCount;
+            if (count == 0 && errorCount == 0) {
+                continue;
+            }
+            out.println(String.format(Locale.ROOT, "%-15s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    operation.label(), count, count / seconds, errorCount,
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0));
+        }
+
+        out.println(String.format(Locale.ROOT, "total: %d requests in %.1fs (%.1f req/s, %.2f MB/s), %d errors",
+                totalRequests, seconds, totalRequests / seconds,
+                bytesTransferred.sum() / seconds / (1024 * 1024), totalErrors));
+    }
+
+    public void writeHistograms(Path reportDir, Scenario scenario, long elapsedNanos) throws IOException {
+        Files.createDirectories(reportDir);
+        for (Scenario.Operation operation : Scenario.Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            Path file = reportDir.resolve(scenario.getName() + "-" + operation.label() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        try (PrintStream out = new PrintStream(Files.newOutputStream(reportDir.resolve(scenario.getName() + "-summary.txt")))) {
+            print(out, scenario, elapsedNanos);
+        }
+    }
+
+    public long errorCount() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,221 @@
+package com.filesharing.backend.loadtest;
+
+import com.filesharing.backend.BackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Entry point of ./gradlew loadTest. Without --target it boots the backend in-process on a random port
+// with the "loadtest" profile (H2 in memory, temp upload dir); with --target it drives an already running
+// server. Any other --key=value arguments are passed to the embedded Spring application.
+public class LoadTestRunner {
+
+    private static final String PASSWORD = "loadtest-password";
+
+    private final Scenario scenario;
+    private final ApiClient client;
+    private final LatencyReport report = new LatencyReport();
+    private final Map<Integer, byte[]> payloads = new HashMap<>();
+    private final List<VirtualUser> users = new ArrayList<>();
+    private final AtomicLong uploadCounter = new AtomicLong();
+
+    LoadTestRunner(Scenario scenario, String baseUrl) {
+        this.scenario = scenario;
+        this.client = new ApiClient(baseUrl);
+
+        // One random payload per size class, shared read-only by all uploads
+        Random random = new Random(42);
+        for (int size : scenario.fileSizeClasses()) {
+            byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            payloads.put(size, payload);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String scenarioName = "smoke";
+        String target = null;
+        Path reportDir = Path.of("build", "loadtest");
+        List<String> springArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("--scenario=")) {
+                scenarioName = arg.substring("--scenario=".length());
+            } else if (arg.startsWith("--target=")) {
+                target = arg.substring("--target=".length());
+            } else if (arg.startsWith("--report-dir=")) {
+                reportDir = Path.of(arg.substring("--report-dir=".length()));
+            } else if (!arg.isBlank()) {
+                springArgs.add(arg);
+            }
+        }
+
+        Scenario scenario = Scenario.load(scenarioName);
+        ConfigurableApplicationContext context = null;
+        if (target == null) {
+            springArgs.add(0, "--server.port=0");
+            SpringApplication application = new SpringApplication(BackendApplication.class);
+            application.setAdditionalProfiles("loadtest");
+            context = application.run(springArgs.toArray(new String[0]));
+            target = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        long errors;
+        try {
+            System.out.println("Load test against " + target);
+            errors = new LoadTestRunner(scenario, target).run(reportDir);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+        System.exit(errors == 0 ? 0 : 1);
+    }
+
+    long run(Path reportDir) throws Exception {
+        setUp();
+
+        long warmupNanos = scenario.getWarmup().toNanos();
+        long measureStart = System.nanoTime() + warmupNanos;
+        long measureEnd = measureStart + scenario.getDuration().toNanos();
+
+        ExecutorService workers = Executors.newFixedThreadPool(scenario.getConcurrency());
+        for (int i = 0; i < scenario.getConcurrency(); i++) {
+            workers.execute(() -> workLoop(measureStart, measureEnd));
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(scenario.getWarmup().plus(scenario.getDuration()).toSeconds() + 120, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+
+        long elapsed = scenario.getDuration().toNanos();
+        report.print(System.out, scenario, elapsed);
+        report.writeHistograms(reportDir, scenario, elapsed);
+        System.out.println("Histograms written to " + reportDir.toAbsolutePath());
+        return report.errorCount();
+    }
+
+    // Registers the virtual users and gives each one a starting set of files to read
+    private void setUp() throws Exception {
+        String runId = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+        for (int i = 0; i < scenario.getUsers(); i++) {
+            VirtualUser user = new VirtualUser("lt" + runId + "u" + i);
+            client.register(user.username, PASSWORD);
+            user.token = client.login(user.username, PASSWORD);
+            for (int f = 0; f < scenario.getSeedFilesPerUser(); f++) {
+                int size = scenario.nextFileSize();
+                long id = client.upload(user.token, nextFileName(), payloads.get(size));
+                user.files.add(new RemoteFile(id, size));
+            }
+            users.add(user);
+        }
+        System.out.println("Seeded " + users.size() + " users with " + scenario.getSeedFilesPerUser() + " files each");
+    }
+
+    private void workLoop(long measureStart, long measureEnd) {
+        while (System.nanoTime() < measureEnd) {
+            VirtualUser user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+            Scenario.Operation operation = scenario.nextOperation();
+            long start = System.nanoTime();
+            try {
+                long bytes = execute(user, operation);
+                if (start >= measureStart) {
+                    report.recordSuccess(operation, System.nanoTime() - start, bytes);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (start >= measureStart) {
+                    report.recordError(operation);
+                }
+                if (e instanceof ApiClient.ApiException && ((ApiClient.ApiException) e).getStatus() == 401) {
+                    relogin(user);
+                }
+            }
+        }
+    }
+
+    private long execute(VirtualUser user, Scenario.Operation operation) throws Exception {
+        switch (operation) {
+            case LOGIN:
+                user.token = client.login(user.username, PASSWORD);
+                return 0;
+            case UPLOAD:
+                int size = scenario.nextFileSize();
+                long id = client.upload(user.token, nextFileName(), payloads.get(size));
+                user.files.add(new RemoteFile(id, size));
+                return size;
+            case DOWNLOAD:
+                RemoteFile downloaded = user.randomFile();
+                client.download(user.token, downloaded.id);
+                return downloaded.size;
+            case VIEW:
+                RemoteFile viewed = user.randomFile();
+                client.view(user.token, viewed.id);
+                return viewed.size;
+            case BATCH_DOWNLOAD:
+                List<Long> ids = new ArrayList<>();
+                long total = 0;
+                for (int i = 0; i < scenario.getBatchSize(); i++) {
+                    RemoteFile file = user.randomFile();
+                    ids.add(file.id);
+                    total += file.size;
+                }
+                client.batchDownload(user.token, ids);
+                return total;
+            default:
+                throw new IllegalStateException("Unhandled operation " + operation);
+        }
+    }
+
+    private void relogin(VirtualUser user) {
+        try {
+            user.token = client.login(user.username, PASSWORD);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignored) {
+            // The next request will report the failure
+        }
+    }
+
+    private String nextFileName() {
+        return "loadtest-" + uploadCounter.incrementAndGet() + ".bin";
+    }
+
+    private static class VirtualUser {
+        private final String username;
+        private final List<RemoteFile> files = new CopyOnWriteArrayList<>();
+        private volatile String token;
+
+        VirtualUser(String username) {
+            this.username = username;
+        }
+
+        RemoteFile randomFile() {
+            return files.get(ThreadLocalRandom.current().nextInt(files.size()));
+        }
+    }
+
+    private static class RemoteFile {
+        private final long id;
+        private final int size;
+
+        RemoteFile(long id, int size) {
+            this.id = id;
+            this.size = size;
+        }
+    }
+}
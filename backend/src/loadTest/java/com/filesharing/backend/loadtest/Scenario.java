@@ -0,0 +1,223 @@
+package com.filesharing.backend.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+// Load profile read from a properties file: either a bundled scenario name (scenarios/<name>.properties)
+// or a path on disk. Weighted mixes are written as "value:weight" pairs separated by commas.
+public class Scenario {
+
+    public enum Operation {
+        LOGIN("login"),
+        UPLOAD("upload"),
+        DOWNLOAD("download"),
+        VIEW("view"),
+        BATCH_DOWNLOAD("batch-download");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        static Operation fromLabel(String label) {
+            for (Operation operation : values()) {
+                if (operation.label.equals(label)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in read-mix: " + label);
+        }
+    }
+
+    private final String name;
+    private final int users;
+    private final int concurrency;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int seedFilesPerUser;
+    private final int batchSize;
+    private final int loginPercent;
+    private final int readWeight;
+    private final int writeWeight;
+    private final WeightedChoice<Integer> fileSizes;
+    private final WeightedChoice<Operation> readMix;
+
+    private Scenario(String name, Properties properties) {
+        this.name = name;
+        this.users = Integer.parseInt(properties.getProperty("users", "10"));
+        this.concurrency = Integer.parseInt(properties.getProperty("concurrency", "16"));
+        this.warmup = Duration.parse(properties.getProperty("warmup", "PT10S"));
+        this.duration = Duration.parse(properties.getProperty("duration", "PT60S"));
+        this.seedFilesPerUser = Integer.parseInt(properties.getProperty("seed-files-per-user", "10"));
+        this.batchSize = Integer.parseInt(properties.getProperty("batch-size", "5"));
+        this.loginPercent = Integer.parseInt(properties.getProperty("login-percent", "1"));
+
+        String[] ratio = properties.getProperty("read-write-ratio", "4:1").split(":");
+        this.readWeight = Integer.parseInt(ratio[0].trim());
+        this.writeWeight = Integer.parseInt(ratio[1].trim());
+
+        this.fileSizes = WeightedChoice.parse(properties.getProperty("file-size-mix", "64KB:100"), Scenario::parseSize);
+        this.readMix = WeightedChoice.parse(properties.getProperty("read-mix", "download:50,view:50"), Operation::fromLabel);
+
+        if (users < 1 || concurrency < 1 || seedFilesPerUser < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("users, concurrency, seed-files-per-user and batch-size must be positive");
+        }
+        if (readWeight + writeWeight <= 0) {
+            throw new IllegalArgumentException("read-write-ratio must not be 0:0");
+        }
+    }
+
+    public static Scenario load(String nameOrPath) throws IOException {
+        Properties properties = new Properties();
+        Path path = Path.of(nameOrPath);
+        if (Files.isRegularFile(path)) {
+            try (InputStream input = Files.newInputStream(path)) {
+                properties.load(input);
+            }
+            String fileName = path.getFileName().toString();
+            return new Scenario(fileName.replaceFirst("\\.properties$", ""), properties);
+        }
+
+        String resource = "scenarios/" + nameOrPath + ".properties";
+        try (InputStream input = Scenario.class.getClassLoader().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new IllegalArgumentException("No scenario file or bundled scenario named: " + nameOrPath);
+            }
+            properties.load(input);
+        }
+        return new Scenario(nameOrPath, properties);
+    }
+
+    // Picks the next request type for a worker: logins first, then reads or writes by ratio
+    public Operation nextOperation() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < loginPercent) {
+            return Operation.LOGIN;
+        }
+        if (random.nextInt(readWeight + writeWeight) < writeWeight) {
+            return Operation.UPLOAD;
+        }
+        return readMix.next();
+    }
+
+    public int nextFileSize() {
+        return fileSizes.next();
+    }
+
+    public List<Integer> fileSizeClasses() {
+        return fileSizes.values();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getSeedFilesPerUser() {
+        return seedFilesPerUser;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%s: %d users, %d workers, warmup %ss, measure %ss, read:write %d:%d, sizes %s, reads %s",
+                name, users, concurrency, warmup.toSeconds(), duration.toSeconds(),
+                readWeight, writeWeight, fileSizes, readMix);
+    }
+
+    static int parseSize(String value) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        if (normalized.endsWith("KB")) {
+            multiplier = 1024;
+        } else if (normalized.endsWith("MB")) {
+            multiplier = 1024 * 1024;
+        }
+        String digits = multiplier == 1 ? normalized.replaceFirst("B$", "") : normalized.substring(0, normalized.length() - 2);
+        return Math.toIntExact(Long.parseLong(digits.trim()) * multiplier);
+    }
+
+    static class WeightedChoice<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Integer> cumulativeWeights = new ArrayList<>();
+        private final String source;
+        private int totalWeight;
+
+        private WeightedChoice(String source) {
+            this.source = source;
+        }
+
+        static <T> WeightedChoice<T> parse(String spec, Function<String, T> parser) {
+            WeightedChoice<T> choice = new WeightedChoice<>(spec);
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected value:weight but got '" + entry + "'");
+                }
+                int weight = Integer.parseInt(parts[1].trim());
+                if (weight <= 0) {
+                    continue;
+                }
+                choice.totalWeight += weight;
+                choice.values.add(parser.apply(parts[0].trim()));
+                choice.cumulativeWeights.add(choice.totalWeight);
+            }
+            if (choice.values.isEmpty()) {
+                throw new IllegalArgumentException("Mix has no positive weights: " + spec);
+            }
+            return choice;
+        }
+
+        T next() {
+            int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < values.size(); i++) {
+                if (roll < cumulativeWeights.get(i)) {
+                    return values.get(i);
+                }
+            }
+            return values.get(values.size() - 1);
+        }
+
+        List<T> values() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+}
@@ -3,14 +3,36 @@ package com.filesharing.backend;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import jakarta.annotation.PostConstruct;
 import java.io.File;
 
 @SpringBootApplication
 public class BackendApplication {
 
-    static {
-        // Load environment variables from .env file before Spring initializes
+    @PostConstruct
+    public void init() {
+        // Create uploads directory if it doesn't exist
+        File uploadDir = new File("uploads");
+        if (!uploadDir.exists()) {
+            uploadDir.mkdirs();
+        }
+    }
+
+    public static void main(String[] args) {
+        loadDotenv();
+        ConfigurableApplicationContext context = SpringApplication.run(BackendApplication.class, args);
+
+        // Training run for the class-data sharing archive: start fully, then exit so the JVM dumps loaded classes
+        if (Boolean.getBoolean("startup.exit-after-refresh")) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    // Load environment variables from .env file before Spring initializes.
+    // Done here rather than in a static initializer so AOT processing and native-image
+    // class initialization never read the build machine's .env.
+    static void loadDotenv() {
         try {
             Dotenv dotenv = Dotenv.configure()
                     .directory(".")
@@ -28,17 +50,4 @@ public class BackendApplication {
             e.printStackTrace();
         }
     }
-
-    @PostConstruct
-    public void init() {
-        // Create uploads directory if it doesn't exist
-        File uploadDir = new File("uploads");
-        if (!uploadDir.exists()) {
-            uploadDir.mkdirs();
-        }
-    }
-
-    public static void main(String[] args) {
-        SpringApplication.run(BackendApplication.class, args);
-    }
 } 
\ No newline at end of file
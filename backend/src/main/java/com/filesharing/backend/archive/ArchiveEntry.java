@@ -0,0 +1,20 @@
+package com.filesharing.backend.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// A named entry to be written into an archive; content is opened lazily when the writer reaches it
+@Getter
+@AllArgsConstructor
+public class ArchiveEntry {
+    private final String name;
+    private final ContentSource content;
+
+    @FunctionalInterface
+    public interface ContentSource {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,107 @@
+package com.filesharing.backend.archive;
+
+import com.filesharing.backend.exception.InvalidArchiveException;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Reads a ZIP or (optionally gzip or bzip2 compressed) TAR archive front to back as a stream,
+// without spooling it to disk first. Only regular files are handed out; directories, links and
+// entries that would escape the archive root are skipped.
+public final class ArchiveUnpacker {
+
+    @FunctionalInterface
+    public interface EntryHandler {
+        // content must be consumed before returning; closing it has no effect on the archive
+        void accept(String path, long size, InputStream content) throws IOException;
+    }
+
+    private ArchiveUnpacker() {
+    }
+
+    public static int unpack(InputStream input, int maxEntries, EntryHandler handler) throws IOException {
+        int count = 0;
+        try (ArchiveInputStream archive = open(input)) {
+            org.apache.commons.compress.archivers.ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                String path = entryPath(entry);
+                if (path == null || !archive.canReadEntryData(entry)) {
+                    continue;
+                }
+                if (++count > maxEntries) {
+                    throw new InvalidArchiveException("Archive contains more than " + maxEntries + " files");
+                }
+                handler.accept(path, entry.getSize(), new NonClosingInputStream(archive));
+            }
+        }
+        return count;
+    }
+
+    private static ArchiveInputStream open(InputStream input) throws IOException {
+        InputStream stream = new BufferedInputStream(input);
+        try {
+            String compression = CompressorStreamFactory.detect(stream);
+            stream = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(compression, stream));
+        } catch (CompressorException notCompressed) {
+            // Plain archive, read as is
+        }
+
+        String format;
+        try {
+            format = ArchiveStreamFactory.detect(stream);
+        } catch (ArchiveException e) {
+            throw new InvalidArchiveException("Unsupported archive format, expected ZIP or TAR", e);
+        }
+
+        if (ArchiveStreamFactory.ZIP.equals(format)) {
+            // Allow STORED entries with data descriptors, which many zip tools write when streaming
+            return new ZipArchiveInputStream(stream, StandardCharsets.UTF_8.name(), true, true);
+        }
+        if (ArchiveStreamFactory.TAR.equals(format)) {
+            return new TarArchiveInputStream(stream);
+        }
+        throw new InvalidArchiveException("Unsupported archive format '" + format + "', expected ZIP or TAR");
+    }
+
+    // Normalized relative path of a regular file entry, or null if the entry should be skipped
+    private static String entryPath(org.apache.commons.compress.archivers.ArchiveEntry entry) {
+        if (entry.isDirectory()) {
+            return null;
+        }
+        if (entry instanceof TarArchiveEntry && !((TarArchiveEntry) entry).isFile()) {
+            return null;
+        }
+
+        String path = StringUtils.cleanPath(entry.getName().replace('\\', '/'));
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.isEmpty() || path.equals("..") || path.startsWith("../") || path.startsWith("__MACOSX/")) {
+            return null;
+        }
+        return path;
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // The archive stream is closed by unpack once all entries are read
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.filesharing.backend.archive;
+
+import com.filesharing.backend.tracing.Span;
+import com.filesharing.backend.tracing.Tracer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Streams a ZIP archive while deflating its contents on a bounded fork-join pool.
+// Entries are split into chunks that are compressed independently (primed with the previous chunk
+// as dictionary, like pigz) and written back in order, so the output is an ordinary sequential ZIP.
+@Component
+public class ParallelZipWriter implements AutoCloseable {
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    // Sizes come after the data (bit 3) and names are UTF-8 (bit 11)
+    private static final int FLAGS = 0x0808;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP32_ENTRY_LIMIT = 0xFFFF;
+
+    private final ForkJoinPool pool;
+
+    private final int parallelism;
+
+    private final int chunkSize;
+
+    private final int compressionLevel;
+
+    private final Tracer tracer;
+
+    public ParallelZipWriter(
+            @Value("${file.archive.parallelism:0}") int parallelism,
+            @Value("${file.archive.chunk-size:512KB}") DataSize chunkSize,
+            @Value("${file.archive.compression-level:6}") int compressionLevel,
+            Tracer tracer) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = (int) Math.max(DICTIONARY_SIZE, chunkSize.toBytes());
+        this.compressionLevel = compressionLevel;
+        this.tracer = tracer;
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Reads of the entries show up as child spans; deflate time is summed over the pool threads
+    public void write(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException {
+        LongAdder deflateNanos = new LongAdder();
+        try (Span span = tracer.startSpan("zip.write")) {
+            span.setAttribute("entries", entries.size());
+            try {
+                span.setAttribute("bytes", writeEntries(entries, outputStream, deflateNanos));
+            } finally {
+                span.setAttribute("deflateMs", deflateNanos.sum() / 1_000_000.0);
+            }
+        }
+    }
+
+    private long writeEntries(List<ArchiveEntry> entries, OutputStream outputStream, LongAdder deflateNanos) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(outputStream, DEFLATE_BUFFER_SIZE));
+        List<EntryState> written = new ArrayList<>(entries.size());
+        Deque<Object> pending = new ArrayDeque<>();
+        Set<String> usedNames = new HashSet<>();
+        // Bounds memory: at most this many chunks are being compressed or waiting to be written
+        int maxInFlight = parallelism * 2;
+        int[] inFlight = {0};
+
+        try {
+            for (ArchiveEntry entry : entries) {
+                EntryState state = new EntryState(uniqueName(entry.getName(), usedNames));
+                pending.add(state);
+
+                CRC32 crc = new CRC32();
+                byte[] dictionary = null;
+                try (InputStream inputStream = entry.getContent().open()) {
+                    byte[] chunk = inputStream.readNBytes(chunkSize);
+                    while (true) {
+                        byte[] next = chunk.length == chunkSize ? inputStream.readNBytes(chunkSize) : new byte[0];
+                        boolean last = next.length == 0;
+
+                        crc.update(chunk);
+                        state.uncompressedSize += chunk.length;
+                        pending.add(pool.submit(new DeflateTask(chunk, dictionary, last, compressionLevel, deflateNanos)));
+                        inFlight[0]++;
+                        while (inFlight[0] > maxInFlight) {
+                            drainHead(pending, out, written, inFlight);
+                        }
+
+                        if (last) {
+                            break;
+                        }
+                        dictionary = chunk.length > DICTIONARY_SIZE
+                                ? Arrays.copyOfRange(chunk, chunk.length - DICTIONARY_SIZE, chunk.length)
+                                : chunk;
+                        chunk = next;
+                    }
+                }
+
+                if (state.uncompressedSize >= ZIP32_LIMIT) {
+                    throw new IOException("Entry too large for archive: " + state.name);
+                }
+                state.crc = crc.getValue();
+                pending.add(new EntryEnd(state));
+            }
+
+            while (!pending.isEmpty()) {
+                drainHead(pending, out, written, inFlight);
+            }
+        } finally {
+            // Abandoned chunks must not keep pool threads busy after a failed request
+            for (Object item : pending) {
+                if (item instanceof Future<?> future) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        writeCentralDirectory(out, written);
+        out.flush();
+        return out.getCount();
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void drainHead(Deque<Object> pending, CountingOutputStream out, List<EntryState> written, int[] inFlight)
+            throws IOException {
+        Object item = pending.poll();
+        if (item instanceof EntryState state) {
+            state.localHeaderOffset = out.getCount();
+            writeLocalHeader(out, state);
+            written.add(state);
+        } else if (item instanceof Future<?> future) {
+            byte[] compressed = await(future);
+            inFlight[0]--;
+            written.get(written.size() - 1).compressedSize += compressed.length;
+            out.write(compressed);
+        } else if (item instanceof EntryEnd end) {
+            writeDataDescriptor(out, end.state);
+        }
+    }
+
+    private byte[] await(Future<?> future) throws IOException {
+        try {
+            return (byte[]) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing archive", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    private void writeLocalHeader(CountingOutputStream out, EntryState state) throws IOException {
+        byte[] name = state.name.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, LOCAL_HEADER_SIGNATURE);
+        writeShort(out, VERSION_DEFAULT);
+        writeShort(out, FLAGS);
+        writeShort(out, METHOD_DEFLATED);
+        writeInt(out, state.dosTime);
+        writeInt(out, 0); // crc, compressed and uncompressed size follow in the data descriptor
+        writeInt(out, 0);
+        writeInt(out, 0);
+        writeShort(out, name.length);
+        writeShort(out, 0);
+        out.write(name);
+    }
+
+    private void writeDataDescriptor(CountingOutputStream out, EntryState state) throws IOException {
+        if (state.compressedSize >= ZIP32_LIMIT) {
+            throw new IOException("Entry too large for archive: " + state.name);
+        }
+        writeInt(out, DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(out, (int) state.crc);
+        writeInt(out, (int) state.compressedSize);
+        writeInt(out, (int) state.uncompressedSize);
+    }
+
+    private void writeCentralDirectory(CountingOutputStream out, List<EntryState> entries) throws IOException {
+        long centralOffset = out.getCount();
+        for (EntryState state : entries) {
+            byte[] name = state.name.getBytes(StandardCharsets.UTF_8);
+            boolean zip64Offset = state.localHeaderOffset >= ZIP32_LIMIT;
+            writeInt(out, CENTRAL_HEADER_SIGNATURE);
+            writeShort(out, zip64Offset ? VERSION_ZIP64 : VERSION_DEFAULT);
+            writeShort(out, zip64Offset ? VERSION_ZIP64 : VERSION_DEFAULT);
+            writeShort(out, FLAGS);
+            writeShort(out, METHOD_DEFLATED);
+            writeInt(out, state.dosTime);
+            writeInt(out, (int) state.crc);
+            writeInt(out, (int) state.compressedSize);
+            writeInt(out, (int) state.uncompressedSize);
+            writeShort(out, name.length);
+            writeShort(out, zip64Offset ? 12 : 0);
+            writeShort(out, 0); // comment length
+            writeShort(out, 0); // disk number
+            writeShort(out, 0); // internal attributes
+            writeInt(out, 0);   // external attributes
+            writeInt(out, zip64Offset ? (int) ZIP32_LIMIT : (int) state.localHeaderOffset);
+            out.write(name);
+            if (zip64Offset) {
+                writeShort(out, 0x0001);
+                writeShort(out, 8);
+                writeLong(out, state.localHeaderOffset);
+            }
+        }
+        long centralSize = out.getCount() - centralOffset;
+
+        boolean zip64 = entries.size() >= ZIP32_ENTRY_LIMIT || centralOffset >= ZIP32_LIMIT || centralSize >= ZIP32_LIMIT;
+        if (zip64) {
+            long zip64EndOffset = out.getCount();
+            writeInt(out, ZIP64_END_SIGNATURE);
+            writeLong(out, 44);
+            writeShort(out, VERSION_ZIP64);
+            writeShort(out, VERSION_ZIP64);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, entries.size());
+            writeLong(out, entries.size());
+            writeLong(out, centralSize);
+            writeLong(out, centralOffset);
+
+            writeInt(out, ZIP64_LOCATOR_SIGNATURE);
+            writeInt(out, 0);
+            writeLong(out, zip64EndOffset);
+            writeInt(out, 1);
+        }
+
+        writeInt(out, END_SIGNATURE);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, zip64 ? ZIP32_ENTRY_LIMIT : entries.size());
+        writeShort(out, zip64 ? ZIP32_ENTRY_LIMIT : entries.size());
+        writeInt(out, zip64 ? (int) ZIP32_LIMIT : (int) centralSize);
+        writeInt(out, zip64 ? (int) ZIP32_LIMIT : (int) centralOffset);
+        writeShort(out, 0);
+    }
+
+    // Two files with the same name would otherwise produce an invalid archive
+    private String uniqueName(String name, Set<String> usedNames) {
+        String candidate = name;
+        int counter = 1;
+        while (!usedNames.add(candidate)) {
+            int dot = name.lastIndexOf('.');
+            candidate = dot > 0
+                    ? name.substring(0, dot) + " (" + counter + ")" + name.substring(dot)
+                    : name + " (" + counter + ")";
+            counter++;
+        }
+        return candidate;
+    }
+
+    private static int toDosTime(LocalDateTime time) {
+        int year = Math.max(time.getYear(), 1980);
+        return (year - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, (value >>> 16) & 0xFFFF);
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, (int) value);
+        writeInt(out, (int) (value >>> 32));
+    }
+
+    private static class DeflateTask implements Callable<byte[]> {
+        private final byte[] input;
+        private final byte[] dictionary;
+        private final boolean last;
+        private final int level;
+        private final LongAdder deflateNanos;
+
+        DeflateTask(byte[] input, byte[] dictionary, boolean last, int level, LongAdder deflateNanos) {
+            this.input = input;
+            this.dictionary = dictionary;
+            this.last = last;
+            this.level = level;
+            this.deflateNanos = deflateNanos;
+        }
+
+        @Override
+        public byte[] call() {
+            long start = System.nanoTime();
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(input);
+                ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 64);
+                byte[] buffer = new byte[DEFLATE_BUFFER_SIZE];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(buffer);
+                        output.write(buffer, 0, length);
+                    }
+                } else {
+                    // A sync flush ends the chunk on a byte boundary without marking the stream final
+                    int length;
+                    do {
+                        length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        output.write(buffer, 0, length);
+                    } while (length == buffer.length);
+                }
+                return output.toByteArray();
+            } finally {
+                deflater.end();
+                deflateNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class EntryState {
+        private final String name;
+        private final int dosTime = toDosTime(LocalDateTime.now());
+        private long localHeaderOffset;
+        private long crc;
+        private long compressedSize;
+        private long uncompressedSize;
+
+        EntryState(String name) {
+            this.name = name;
+        }
+    }
+
+    private record EntryEnd(EntryState state) {
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.filesharing.backend.audit;
+
+import com.filesharing.backend.model.AccessType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Records downloads and views without a database write on the request path. Events go into a
+// bounded lock-free queue; a background thread drains it on a timer, or as soon as a full batch
+// is waiting, and writes the audit rows and the per-file counters in JDBC batches.
+// When the queue is full new events are dropped, so a slow database costs accuracy, not memory.
+@Component
+public class AccessLog {
+
+    private static final Logger logger = Logger.getLogger(AccessLog.class.getName());
+
+    private static final String INSERT_SQL = "INSERT INTO file_access_log (file_id, user_id, access_type, accessed_at) "
+            + "VALUES (?, ?, ?, ?)";
+
+    // Only owners read their files, so the accessing user is also the partition key of the row; a file
+    // deleted before the batch is written keeps its old counters
+    private static final String COUNT_SQL = "UPDATE files SET download_count = download_count + ?, "
+            + "view_count = view_count + ?, last_accessed_at = ? WHERE id = ? AND user_id = ? AND deleted = false";
+
+    @Value("${file.access-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.access-log.capacity:100000}")
+    private int capacity;
+
+    @Value("${file.access-log.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${file.access-log.flush-interval:PT1S}")
+    private Duration flushInterval;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Queue<AccessEvent> queue = new ConcurrentLinkedQueue<>();
+
+    // ConcurrentLinkedQueue.size() walks the queue, so the bound is tracked separately
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private Thread flusher;
+
+    @PostConstruct
+    public void start() {
+        FunctionCounter.builder("file.access.events", written, AtomicLong::get)
+                .tag("result", "written").register(meterRegistry);
+        FunctionCounter.builder("file.access.events", dropped, AtomicLong::get)
+                .tag("result", "dropped").register(meterRegistry);
+        Gauge.builder("file.access.queued", queued, AtomicInteger::get).register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        flusher = new Thread(this::run, "access-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void record(Long fileId, Long userId, AccessType accessType) {
+        if (!enabled) {
+            return;
+        }
+        int size = queued.incrementAndGet();
+        if (size > capacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(new AccessEvent(fileId, userId, accessType, System.currentTimeMillis()));
+        if (size == batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private void run() {
+        long intervalNanos = flushInterval.toNanos();
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            drain();
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (queued.get() > 0) {
+            List<AccessEvent> batch = new ArrayList<>(Math.min(queued.get(), batchSize));
+            AccessEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+            queued.addAndGet(-batch.size());
+            if (batch.isEmpty()) {
+                return;
+            }
+            write(batch);
+        }
+    }
+
+    private void write(List<AccessEvent> batch) {
+        // Counters are summed per file first, so a popular file costs one update per batch;
+        // the latest access in the batch becomes the file's last access
+        Map<Long, long[]> counts = new LinkedHashMap<>();
+        for (AccessEvent event : batch) {
+            long[] fileCounts = counts.computeIfAbsent(event.fileId, id -> new long[] {0, 0, 0, event.userId});
+            fileCounts[event.accessType == AccessType.DOWNLOAD ? 0 : 1]++;
+            fileCounts[2] = Math.max(fileCounts[2], event.accessedAt);
+        }
+        List<Object[]> countArgs = new ArrayList<>(counts.size());
+        counts.forEach((fileId, fileCounts) -> countArgs.add(
+                new Object[] {fileCounts[0], fileCounts[1], new Timestamp(fileCounts[2]), fileId, fileCounts[3]}));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (statement, event) -> {
+                    statement.setLong(1, event.fileId);
+                    statement.setLong(2, event.userId);
+                    statement.setString(3, event.accessType.name());
+                    statement.setTimestamp(4, new Timestamp(event.accessedAt));
+                });
+                jdbcTemplate.batchUpdate(COUNT_SQL, countArgs);
+            });
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            // Retrying would let a failing database fill the heap; the batch is counted as dropped
+            dropped.addAndGet(batch.size());
+            logger.log(Level.WARNING, "Could not write " + batch.size() + " access events", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static class AccessEvent {
+        private final Long fileId;
+        private final Long userId;
+        private final AccessType accessType;
+        private final long accessedAt;
+
+        AccessEvent(Long fileId, Long userId, AccessType accessType, long accessedAt) {
+            this.fileId = fileId;
+            this.userId = userId;
+            this.accessType = accessType;
+            this.accessedAt = accessedAt;
+        }
+    }
+}
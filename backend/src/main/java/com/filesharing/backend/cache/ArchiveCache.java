@@ -0,0 +1,375 @@
+package com.filesharing.backend.cache;
+
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.storage.FileEncryption;
+import com.filesharing.backend.storage.FileStorage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Size-bounded LRU cache of built batch-download archives on local disk.
+// The key covers the sorted file ids and each file's name, size and checksum, so any change to a
+// member produces a different key; invalidate() additionally frees entries of renamed or deleted files.
+// The index lives in memory only, so leftovers from a previous run are cleared at startup.
+@Component
+public class ArchiveCache {
+
+    private static final Logger logger = Logger.getLogger(ArchiveCache.class.getName());
+
+    // Evicted archives may still be in the middle of a sendfile, so deletion is deferred briefly
+    private static final long EVICTION_GRACE_MILLIS = 60_000;
+
+    @FunctionalInterface
+    public interface ArchiveWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    @Value("${file.archive-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.archive-cache.dir:${file.upload-dir}/.archive-cache}")
+    private String cacheDir;
+
+    @Value("${file.archive-cache.max-size:1GB}")
+    private DataSize maxSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private FileEncryption fileEncryption;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final LinkedHashMap<String, CachedArchive> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Long, Set<String>> keysByFileId = new HashMap<>();
+
+    private final Deque<EvictedArchive> evicted = new ArrayDeque<>();
+
+    private long totalSize;
+
+    @PostConstruct
+    public void init() throws IOException {
+        // Disk tier of the batch download path
+        for (String result : new String[] {"hit", "miss"}) {
+            FunctionCounter.builder("cache.gets", "hit".equals(result) ? hits : misses, AtomicLong::get)
+                    .tag("cache", "batch-archive").tag("tier", "disk").tag("result", result)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("cache.size", this, ArchiveCache::size)
+                .tag("cache", "batch-archive").tag("tier", "disk").register(meterRegistry);
+
+        invalidationBus.subscribe(InvalidationBus.FILES, new InvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                ArchiveCache.this.invalidate(Long.valueOf(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                clear();
+            }
+        });
+
+        // Cached archives would be plaintext copies of encrypted files
+        if (enabled && fileEncryption.isEnabled()) {
+            logger.info("Batch archive cache is disabled because stored files are encrypted");
+            enabled = false;
+        }
+        if (!enabled) {
+            return;
+        }
+        Path directory = Paths.get(cacheDir);
+        Files.createDirectories(directory);
+        try (Stream<Path> leftovers = Files.list(directory)) {
+            leftovers.forEach(this::deleteQuietly);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized Optional<Path> lookup(List<FileEntity> files) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = key(files);
+        CachedArchive archive = entries.get(key);
+        if (archive != null && !Files.exists(archive.path)) {
+            remove(key);
+            archive = null;
+        }
+        if (archive == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(archive.path);
+    }
+
+    // Writes the archive to the client and, in the same pass, into the cache.
+    // The cached copy is only kept if the whole archive was written and fits the cache.
+    public void writeThrough(List<FileEntity> files, OutputStream outputStream, ArchiveWriter writer) throws IOException {
+        if (!enabled) {
+            writer.write(outputStream);
+            return;
+        }
+
+        String key = key(files);
+        Path directory = Paths.get(cacheDir);
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "build-", ".tmp");
+        boolean complete = false;
+        TeeOutputStream tee = new TeeOutputStream(outputStream, Files.newOutputStream(temp), maxSize.toBytes());
+        try {
+            writer.write(tee);
+            tee.flush();
+            complete = true;
+        } finally {
+            tee.closeCopy();
+            if (complete && tee.isCopyComplete()) {
+                commitQuietly(key, files, temp, tee.getCount());
+            } else {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void invalidate(Long fileId) {
+        Set<String> keys = keysByFileId.remove(fileId);
+        if (keys != null) {
+            keys.forEach(this::remove);
+        }
+    }
+
+    public synchronized void clear() {
+        new ArrayList<>(entries.keySet()).forEach(this::remove);
+    }
+
+    @Scheduled(fixedDelayString = "${file.archive-cache.purge-interval:PT1M}")
+    public synchronized void purgeEvicted() {
+        long cutoff = System.currentTimeMillis() - EVICTION_GRACE_MILLIS;
+        while (!evicted.isEmpty() && evicted.peekFirst().evictedAt <= cutoff) {
+            deleteQuietly(evicted.pollFirst().path);
+        }
+    }
+
+    // The client already has its archive, a failed commit only costs the cached copy
+    private void commitQuietly(String key, List<FileEntity> files, Path temp, long size) {
+        try {
+            commit(key, files, temp, size);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not cache batch archive " + key, e);
+            deleteQuietly(temp);
+        }
+    }
+
+    private synchronized void commit(String key, List<FileEntity> files, Path temp, long size) throws IOException {
+        if (entries.containsKey(key)) {
+            // A concurrent request built the same archive first
+            deleteQuietly(temp);
+            return;
+        }
+
+        Path target = Paths.get(cacheDir).resolve(key + ".zip");
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Set<Long> fileIds = new HashSet<>();
+        for (FileEntity file : files) {
+            fileIds.add(file.getId());
+            keysByFileId.computeIfAbsent(file.getId(), id -> new HashSet<>()).add(key);
+        }
+        entries.put(key, new CachedArchive(target, size, fileIds));
+        totalSize += size;
+
+        // Least recently used archives go first
+        Iterator<Map.Entry<String, CachedArchive>> eldest = entries.entrySet().iterator();
+        while (totalSize > maxSize.toBytes() && eldest.hasNext()) {
+            Map.Entry<String, CachedArchive> candidate = eldest.next();
+            if (candidate.getKey().equals(key)) {
+                continue;
+            }
+            eldest.remove();
+            forget(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void remove(String key) {
+        CachedArchive archive = entries.remove(key);
+        forget(key, archive);
+    }
+
+    private void forget(String key, CachedArchive archive) {
+        if (archive == null) {
+            return;
+        }
+        totalSize -= archive.size;
+        for (Long fileId : archive.fileIds) {
+            Set<String> keys = keysByFileId.get(fileId);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByFileId.remove(fileId);
+            }
+        }
+        evicted.addLast(new EvictedArchive(archive.path, System.currentTimeMillis()));
+    }
+
+    private String key(List<FileEntity> files) {
+        MessageDigest digest = FileStorage.newDigest();
+        files.stream()
+                .sorted(Comparator.comparing(FileEntity::getId))
+                .forEach(file -> {
+                    String stamp = file.getId() + "\u0000" + file.getFileName() + "\u0000" + file.getFileSize()
+                            + "\u0000" + (file.getChecksum() != null ? file.getChecksum() : file.getFilePath()) + "\n";
+                    digest.update(stamp.getBytes(StandardCharsets.UTF_8));
+                });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete cached archive " + path, e);
+        }
+    }
+
+    private static class CachedArchive {
+        private final Path path;
+        private final long size;
+        private final Set<Long> fileIds;
+
+        CachedArchive(Path path, long size, Set<Long> fileIds) {
+            this.path = path;
+            this.size = size;
+            this.fileIds = fileIds;
+        }
+    }
+
+    private static class EvictedArchive {
+        private final Path path;
+        private final long evictedAt;
+
+        EvictedArchive(Path path, long evictedAt) {
+            this.path = path;
+            this.evictedAt = evictedAt;
+        }
+    }
+
+    // Copies everything written to the client into the cache file. A failing or oversized copy
+    // is dropped silently; the client stream is never affected by the cache side.
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream client;
+        private final long limit;
+        private OutputStream copy;
+        private long count;
+        private boolean copyComplete = true;
+
+        TeeOutputStream(OutputStream client, OutputStream copy, long limit) {
+            this.client = client;
+            this.copy = copy;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            client.write(b, off, len);
+            count += len;
+            if (copy == null) {
+                return;
+            }
+            if (count > limit) {
+                abandonCopy();
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+            } catch (IOException e) {
+                abandonCopy();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            client.flush();
+        }
+
+        // The client stream belongs to the caller and is left open
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        void closeCopy() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+            } catch (IOException e) {
+                copyComplete = false;
+            }
+            copy = null;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        boolean isCopyComplete() {
+            return copyComplete;
+        }
+
+        private void abandonCopy() {
+            closeCopy();
+            copyComplete = false;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.filesharing.backend.cache;
+
+// Count-min sketch of recent access frequency (TinyLFU). Four rows of saturating 4-bit counters;
+// once enough accesses have been sampled every counter is halved, so popularity decays over time.
+class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedItems) {
+        int width = Integer.highestOneBit(Math.max(1024, expectedItems - 1) << 1);
+        this.counters = new byte[ROWS][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    void increment(long key) {
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(key, row);
+            if (counters[row][index] < MAX_COUNT) {
+                counters[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(long key) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, counters[row][index(key, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(long key, int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
@@ -0,0 +1,413 @@
+package com.filesharing.backend.cache;
+
+import com.filesharing.backend.model.FileEntity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Off-heap cache for the content of small, frequently viewed files.
+// Memory comes from direct 1MB slabs carved into fixed chunk sizes (memcached style), so cached
+// bytes never live on the Java heap and evicted chunks are reused instead of being garbage collected.
+// A file is only admitted over the least recently used file of its chunk size when a TinyLFU
+// frequency sketch says it has been requested more often recently.
+@Component
+public class HotFileCache {
+
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final double CHUNK_GROWTH_FACTOR = 1.25;
+
+    @Value("${file.hot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.hot-cache.max-size:64MB}")
+    private DataSize maxSize;
+
+    @Value("${file.hot-cache.max-file-size:64KB}")
+    private DataSize maxFileSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    private final List<SizeClass> sizeClasses = new ArrayList<>();
+
+    private FrequencySketch sketch;
+
+    private int maxSlabs;
+
+    private int slabsAllocated;
+
+    private int maxCachedSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        maxCachedSize = (int) Math.min(maxFileSize.toBytes(), SLAB_SIZE);
+        maxSlabs = (int) Math.max(1, maxSize.toBytes() / SLAB_SIZE);
+        for (double size = MIN_CHUNK_SIZE; ; size *= CHUNK_GROWTH_FACTOR) {
+            int chunkSize = (int) Math.min(Math.ceil(size / 8) * 8, maxCachedSize);
+            sizeClasses.add(new SizeClass(chunkSize));
+            if (chunkSize >= maxCachedSize) {
+                break;
+            }
+        }
+        sketch = new FrequencySketch((int) Math.max(1, maxSize.toBytes() / MIN_CHUNK_SIZE));
+
+        // Memory tier of the view path; misses fall through to the disk tier
+        registerGets("hit", hits);
+        registerGets("miss", misses);
+        FunctionCounter.builder("cache.evictions", evictions, AtomicLong::get)
+                .tag("cache", "hot-file").tag("tier", "memory").register(meterRegistry);
+        FunctionCounter.builder("cache.admission.rejected", rejections, AtomicLong::get)
+                .tag("cache", "hot-file").tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("cache.size", this, HotFileCache::size)
+                .tag("cache", "hot-file").tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("cache.memory.allocated", this, cache -> (double) cache.slabsAllocated * SLAB_SIZE)
+                .tag("cache", "hot-file").tag("tier", "memory").baseUnit("bytes").register(meterRegistry);
+
+        invalidationBus.subscribe(InvalidationBus.FILES, new InvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                HotFileCache.this.invalidate(Long.valueOf(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                clear();
+            }
+        });
+    }
+
+    // Returns the cached content of the file, or the resource from the loader. Small files that
+    // are requested often enough are copied into the cache on the way.
+    public Resource get(FileEntity file, Supplier<Resource> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Long fileId = file.getId();
+        synchronized (this) {
+            sketch.increment(fileId);
+            Entry entry = entries.get(fileId);
+            if (entry != null) {
+                entry.sizeClass.lru.get(fileId);
+                hits.incrementAndGet();
+                return new CachedResource(entry, file, loader);
+            }
+        }
+        misses.incrementAndGet();
+
+        Resource resource = loader.get();
+        long size = file.getFileSize() != null ? file.getFileSize() : -1;
+        if (size <= 0 || size > maxCachedSize) {
+            return resource;
+        }
+
+        SizeClass sizeClass = sizeClassFor((int) size);
+        ByteBuffer chunk = reserveChunk(fileId, sizeClass);
+        if (chunk == null) {
+            return resource;
+        }
+
+        // Fill outside the lock; the entry only becomes visible once it is complete
+        boolean filled;
+        try {
+            filled = fill(resource, chunk, (int) size);
+        } catch (IOException e) {
+            filled = false;
+        }
+        if (!filled) {
+            releaseChunk(sizeClass, chunk);
+            return resource;
+        }
+
+        synchronized (this) {
+            if (entries.containsKey(fileId)) {
+                // Another request cached the same file meanwhile
+                sizeClass.free.add(chunk);
+                return resource;
+            }
+            Entry entry = new Entry(fileId, sizeClass, chunk, (int) size);
+            entries.put(fileId, entry);
+            sizeClass.lru.put(fileId, entry);
+            return new CachedResource(entry, file, loader);
+        }
+    }
+
+    public synchronized void invalidate(Long fileId) {
+        Entry entry = entries.get(fileId);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        new ArrayList<>(entries.values()).forEach(this::remove);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void registerGets(String result, AtomicLong counter) {
+        FunctionCounter.builder("cache.gets", counter, AtomicLong::get)
+                .tag("cache", "hot-file").tag("tier", "memory").tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private SizeClass sizeClassFor(int size) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.chunkSize >= size) {
+                return sizeClass;
+            }
+        }
+        throw new IllegalArgumentException("No chunk size for " + size + " bytes");
+    }
+
+    private synchronized ByteBuffer reserveChunk(Long fileId, SizeClass sizeClass) {
+        if (entries.containsKey(fileId)) {
+            return null;
+        }
+        if (sizeClass.free.isEmpty() && slabsAllocated < maxSlabs) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabsAllocated++;
+            for (int offset = 0; offset + sizeClass.chunkSize <= SLAB_SIZE; offset += sizeClass.chunkSize) {
+                sizeClass.free.add(slab.slice(offset, sizeClass.chunkSize));
+            }
+        }
+        if (!sizeClass.free.isEmpty()) {
+            return sizeClass.free.poll();
+        }
+
+        // Full: the candidate has to be more popular than the victim it would replace
+        Iterator<Entry> lru = sizeClass.lru.values().iterator();
+        if (!lru.hasNext()) {
+            return null;
+        }
+        Entry victim = lru.next();
+        if (sketch.frequency(fileId) <= sketch.frequency(victim.fileId)) {
+            rejections.incrementAndGet();
+            return null;
+        }
+        remove(victim);
+        evictions.incrementAndGet();
+        return sizeClass.free.poll();
+    }
+
+    private synchronized void releaseChunk(SizeClass sizeClass, ByteBuffer chunk) {
+        sizeClass.free.add(chunk);
+    }
+
+    private boolean fill(Resource resource, ByteBuffer chunk, int size) throws IOException {
+        ByteBuffer target = chunk.duplicate();
+        target.clear().limit(size);
+        try (InputStream input = resource.getInputStream();
+             ReadableByteChannel channel = Channels.newChannel(input)) {
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    return false;
+                }
+            }
+            // Size in the database no longer matches the stored bytes; do not cache
+            return input.read() < 0;
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.fileId);
+        entry.sizeClass.lru.remove(entry.fileId);
+        entry.removed = true;
+        // A chunk that is still being read is returned to the free list by the last reader
+        if (entry.readers == 0) {
+            entry.sizeClass.free.add(entry.chunk);
+        }
+    }
+
+    private synchronized boolean acquire(Entry entry) {
+        if (entry.removed) {
+            return false;
+        }
+        entry.readers++;
+        return true;
+    }
+
+    private synchronized void release(Entry entry) {
+        if (--entry.readers == 0 && entry.removed) {
+            entry.sizeClass.free.add(entry.chunk);
+        }
+    }
+
+    private static class SizeClass {
+        private final int chunkSize;
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private final LinkedHashMap<Long, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private static class Entry {
+        private final long fileId;
+        private final SizeClass sizeClass;
+        private final ByteBuffer chunk;
+        private final int length;
+        private int readers;
+        private boolean removed;
+
+        Entry(long fileId, SizeClass sizeClass, ByteBuffer chunk, int length) {
+            this.fileId = fileId;
+            this.sizeClass = sizeClass;
+            this.chunk = chunk;
+            this.length = length;
+        }
+
+        ByteBuffer view() {
+            ByteBuffer view = chunk.asReadOnlyBuffer();
+            view.clear().limit(length);
+            return view;
+        }
+    }
+
+    // Resource over a cache entry. Each stream pins the chunk until it is closed; if the entry was
+    // evicted in between, the content is read from the loader's resource instead.
+    public class CachedResource extends AbstractResource {
+        private final Entry entry;
+        private final FileEntity file;
+        private final Supplier<Resource> loader;
+
+        CachedResource(Entry entry, FileEntity file, Supplier<Resource> loader) {
+            this.entry = entry;
+            this.file = file;
+            this.loader = loader;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (!acquire(entry)) {
+                return loader.get().getInputStream();
+            }
+            return new ChunkInputStream(entry);
+        }
+
+        // Reactive variant: copies into a (pooled) buffer from the response's factory
+        public Flux<DataBuffer> read(DataBufferFactory bufferFactory) {
+            if (!acquire(entry)) {
+                return DataBufferUtils.read(loader.get(), bufferFactory, 64 * 1024);
+            }
+            try {
+                DataBuffer buffer = bufferFactory.allocateBuffer(entry.length);
+                buffer.write(entry.view());
+                return Flux.just(buffer);
+            } finally {
+                release(entry);
+            }
+        }
+
+        @Override
+        public long contentLength() {
+            return entry.length;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getFileName();
+        }
+
+        @Override
+        public String getDescription() {
+            return "cached file [" + file.getFilePath() + "]";
+        }
+    }
+
+    private class ChunkInputStream extends InputStream {
+        private final Entry entry;
+        private final ByteBuffer buffer;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ChunkInputStream(Entry entry) {
+            this.entry = entry;
+            this.buffer = entry.view();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(entry);
+            }
+        }
+    }
+}
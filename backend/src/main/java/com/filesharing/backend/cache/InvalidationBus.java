@@ -0,0 +1,23 @@
+package com.filesharing.backend.cache;
+
+// Tells every node's local caches that something changed. Listeners on this node are called
+// once the current transaction commits (right away without one); other nodes hear about it
+// through the configured transport.
+public interface InvalidationBus {
+
+    // Key is the file id; published on rename and delete
+    String FILES = "files";
+
+    // Key is "<jti>:<expiresAtMillis>"; published on logout
+    String REVOKED_TOKENS = "revoked-tokens";
+
+    // Key is "<fileId>:<expiresAtMillis>", or just the file id when the expiry was removed
+    String FILE_EXPIRY = "file-expiry";
+
+    // Key is the user id; published when a user's write commits, for read-your-writes routing
+    String USER_WRITES = "user-writes";
+
+    void publish(String topic, String key);
+
+    void subscribe(String topic, InvalidationListener listener);
+}
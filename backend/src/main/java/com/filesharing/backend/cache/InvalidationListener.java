@@ -0,0 +1,9 @@
+package com.filesharing.backend.cache;
+
+public interface InvalidationListener {
+
+    void invalidate(String key);
+
+    // Called when events may have been missed, e.g. after the bus reconnected
+    void invalidateAll();
+}
@@ -0,0 +1,69 @@
+package com.filesharing.backend.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// In-process fan-out only, for single-node deployments. Also the base of the cross-node transports.
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.transport", havingValue = "local", matchIfMissing = true)
+public class LocalInvalidationBus implements InvalidationBus {
+
+    private static final Logger logger = Logger.getLogger(LocalInvalidationBus.class.getName());
+
+    private final Map<String, List<InvalidationListener>> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String topic, String key) {
+        // Other readers must not repopulate a cache from data that is about to be rolled back
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishNow(topic, key);
+                }
+            });
+        } else {
+            publishNow(topic, key);
+        }
+    }
+
+    @Override
+    public void subscribe(String topic, InvalidationListener listener) {
+        listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    protected void publishNow(String topic, String key) {
+        dispatch(topic, key);
+    }
+
+    protected void dispatch(String topic, String key) {
+        for (InvalidationListener listener : listeners.getOrDefault(topic, List.of())) {
+            try {
+                listener.invalidate(key);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Invalidation of " + topic + " " + key + " failed", e);
+            }
+        }
+    }
+
+    protected void dispatchAll() {
+        listeners.forEach((topic, topicListeners) -> {
+            for (InvalidationListener listener : topicListeners) {
+                try {
+                    listener.invalidateAll();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Invalidation of all " + topic + " entries failed", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,236 @@
+package com.filesharing.backend.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Carries invalidations between nodes over Postgres LISTEN/NOTIFY, so no separate broker is needed.
+// One thread owns a dedicated connection outside the pool: it waits for notifications for one
+// coalesce window, fans them out, then sends whatever this node published meanwhile.
+// Duplicate events are collapsed on both sides and several events share one NOTIFY.
+// Every payload starts with the sending node's id, so nodes skip their own events.
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.transport", havingValue = "postgres")
+public class PostgresInvalidationBus extends LocalInvalidationBus {
+
+    private static final Logger logger = Logger.getLogger(PostgresInvalidationBus.class.getName());
+
+    private static final String CHANNEL = "cache_invalidation";
+
+    // NOTIFY payloads must stay below 8000 bytes
+    private static final int MAX_PAYLOAD_BYTES = 7000;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${cache.invalidation.coalesce-window:PT0.05S}")
+    private Duration coalesceWindow;
+
+    @Value("${cache.invalidation.reconnect-delay:PT5S}")
+    private Duration reconnectDelay;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // "topic\tkey" lines waiting to be sent; the set drops duplicates within a window
+    private final Set<String> outgoing = new LinkedHashSet<>();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        FunctionCounter.builder("cache.invalidations", sent, AtomicLong::get)
+                .tag("direction", "sent").register(meterRegistry);
+        FunctionCounter.builder("cache.invalidations", received, AtomicLong::get)
+                .tag("direction", "received").register(meterRegistry);
+
+        worker = new Thread(this::run, "cache-invalidation");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    protected void publishNow(String topic, String key) {
+        dispatch(topic, key);
+        synchronized (outgoing) {
+            outgoing.add(topic + '\t' + key);
+        }
+    }
+
+    private void run() {
+        Connection connection = null;
+        boolean connectedBefore = false;
+        while (running) {
+            try {
+                if (connection == null) {
+                    connection = connect();
+                    // Events sent while this node was disconnected are lost, so start over
+                    if (connectedBefore) {
+                        dispatchAll();
+                    }
+                    connectedBefore = true;
+                }
+                receive(connection);
+                send(connection);
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "Cache invalidation connection failed, reconnecting in " + reconnectDelay, e);
+                closeQuietly(connection);
+                connection = null;
+                sleep(reconnectDelay);
+            }
+        }
+
+        if (connection != null) {
+            try {
+                send(connection);
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "Could not send the last cache invalidations", e);
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    private void receive(Connection connection) throws SQLException {
+        int timeoutMillis = (int) Math.max(1, coalesceWindow.toMillis());
+        PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(timeoutMillis);
+        if (notifications == null) {
+            return;
+        }
+
+        Set<String> events = new LinkedHashSet<>();
+        for (PGNotification notification : notifications) {
+            String[] lines = notification.getParameter().split("\n");
+            if (lines.length < 2 || nodeId.equals(lines[0])) {
+                continue;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                events.add(lines[i]);
+            }
+        }
+
+        for (String event : events) {
+            int tab = event.indexOf('\t');
+            if (tab > 0) {
+                received.incrementAndGet();
+                dispatch(event.substring(0, tab), event.substring(tab + 1));
+            }
+        }
+    }
+
+    private void send(Connection connection) throws SQLException {
+        List<String> events;
+        synchronized (outgoing) {
+            if (outgoing.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(outgoing);
+            outgoing.clear();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            StringBuilder payload = new StringBuilder(nodeId);
+            int payloadBytes = nodeId.length();
+            for (String event : events) {
+                int eventBytes = event.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (payloadBytes > nodeId.length() && payloadBytes + eventBytes > MAX_PAYLOAD_BYTES) {
+                    notify(statement, payload.toString());
+                    payload = new StringBuilder(nodeId);
+                    payloadBytes = nodeId.length();
+                }
+                payload.append('\n').append(event);
+                payloadBytes += eventBytes;
+            }
+            notify(statement, payload.toString());
+            sent.addAndGet(events.size());
+        } catch (SQLException e) {
+            // Keep the events for the next connection; duplicates are harmless
+            synchronized (outgoing) {
+                outgoing.addAll(events);
+            }
+            throw e;
+        }
+    }
+
+    private static void notify(PreparedStatement statement, String payload) throws SQLException {
+        statement.setString(1, CHANNEL);
+        statement.setString(2, payload);
+        statement.execute();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Nothing left to release
+        }
+    }
+
+    private void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
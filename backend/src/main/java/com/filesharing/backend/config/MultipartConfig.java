@@ -0,0 +1,30 @@
+package com.filesharing.backend.config;
+
+import com.filesharing.backend.multipart.StreamingMultipartResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.util.Set;
+
+// Replaces Spring Boot's multipart resolver so single-file uploads can be streamed straight to storage
+@Configuration
+@Profile("!reactive")
+public class MultipartConfig {
+
+    @Value("${file.upload.streaming:true}")
+    private boolean streaming;
+
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public StandardServletMultipartResolver multipartResolver(MultipartProperties multipartProperties) {
+        StandardServletMultipartResolver resolver = streaming
+                ? new StreamingMultipartResolver(Set.of("/api/files/upload"))
+                : new StandardServletMultipartResolver();
+        resolver.setResolveLazily(multipartProperties.isResolveLazily());
+        return resolver;
+    }
+}
@@ -0,0 +1,61 @@
+package com.filesharing.backend.config;
+
+import com.filesharing.backend.dto.IntegrityReport;
+import com.filesharing.backend.exception.ErrorDetails;
+import com.filesharing.backend.exception.ValidationErrorResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+// Reflection and resource hints for the AOT/native build (./gradlew -PfastStartup ...).
+// Spring's AOT engine covers beans, controllers and JPA entities; these are the lookups it cannot see.
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.Hints.class)
+public class NativeHintsConfig {
+
+    // jjwt 0.11 finds its implementation and JSON (de)serializer by class name at runtime
+    private static final String[] JJWT_CLASSES = {
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParser",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.DefaultClaims",
+            "io.jsonwebtoken.impl.DefaultJwsHeader",
+            "io.jsonwebtoken.impl.compression.DefaultCompressionCodecResolver",
+            "io.jsonwebtoken.impl.io.RuntimeClasspathSerializerLocator",
+            "io.jsonwebtoken.impl.io.RuntimeClasspathDeserializerLocator",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer"
+    };
+
+    // Hibernate instantiates the configured dialect from the property value
+    private static final String[] HIBERNATE_CLASSES = {
+            "org.hibernate.dialect.PostgreSQLDialect"
+    };
+
+    static class Hints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (String className : JJWT_CLASSES) {
+                hints.reflection().registerType(TypeReference.of(className),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+            }
+            for (String className : HIBERNATE_CLASSES) {
+                hints.reflection().registerType(TypeReference.of(className), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            }
+
+            // Bodies produced outside controller signatures (exception handlers, actuator endpoint)
+            new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                    ErrorDetails.class, ValidationErrorResponse.class, IntegrityReport.class);
+
+            hints.resources().registerPattern("application*.properties");
+            // springdoc serves the Swagger UI webjar and reads its version from the Maven metadata
+            hints.resources().registerPattern("META-INF/resources/webjars/swagger-ui/**");
+            hints.resources().registerPattern("META-INF/maven/org.webjars/swagger-ui/pom.properties");
+        }
+    }
+}
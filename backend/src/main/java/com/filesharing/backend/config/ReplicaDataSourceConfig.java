@@ -0,0 +1,88 @@
+package com.filesharing.backend.config;
+
+import com.filesharing.backend.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read replicas for @Transactional(readOnly = true) work. Without db.replica.enabled the
+// auto-configured single data source is used as before.
+@Configuration
+@ConditionalOnProperty(name = "db.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Value("${db.replica.urls}")
+    private List<String> replicaUrls;
+
+    // Replicas use the primary's credentials unless their own are given
+    @Value("${db.replica.username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${db.replica.password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${db.replica.pool-size:10}")
+    private int replicaPoolSize;
+
+    @Value("${db.replica.max-lag:PT5S}")
+    private Duration maxLag;
+
+    @Value("${db.replica.read-your-writes-window:PT10S}")
+    private Duration readYourWritesWindow;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource, MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicaPools = new LinkedHashMap<>();
+        for (String url : replicaUrls) {
+            if (!StringUtils.hasText(url)) {
+                continue;
+            }
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + (replicaPools.size() + 1));
+            pool.setJdbcUrl(url.trim());
+            pool.setUsername(replicaUsername);
+            pool.setPassword(replicaPassword);
+            pool.setMaximumPoolSize(replicaPoolSize);
+            pool.setReadOnly(true);
+            replicaPools.put(pool.getPoolName(), pool);
+        }
+
+        ReplicaRoutingDataSource routingDataSource =
+                new ReplicaRoutingDataSource(primaryDataSource, replicaPools, maxLag, readYourWritesWindow);
+        for (String name : replicaPools.keySet()) {
+            Gauge.builder("db.replica.lag", routingDataSource, dataSource -> dataSource.getLagSeconds(name))
+                    .tag("replica", name)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+        return routingDataSource;
+    }
+
+    // JPA and the transaction manager use this one
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
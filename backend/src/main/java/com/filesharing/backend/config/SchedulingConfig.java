@@ -0,0 +1,10 @@
+package com.filesharing.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Enables background jobs such as the integrity scrubber
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
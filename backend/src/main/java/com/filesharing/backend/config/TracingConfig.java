@@ -0,0 +1,17 @@
+package com.filesharing.backend.config;
+
+import com.filesharing.backend.tracing.Tracer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+@Configuration
+public class TracingConfig {
+
+    // Picked up by Spring Boot's applicationTaskExecutor, which also runs Spring MVC async work
+    // such as StreamingResponseBody, so streamed responses stay in the request's trace
+    @Bean
+    public TaskDecorator tracingTaskDecorator(Tracer tracer) {
+        return tracer::wrap;
+    }
+}
@@ -1,10 +1,13 @@
 package com.filesharing.backend.config;
 
+import com.filesharing.backend.limit.ConcurrencyLimitFilter;
 import com.filesharing.backend.security.JwtAuthenticationFilter;
 import com.filesharing.backend.security.UserDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -26,6 +29,7 @@ import java.util.List;
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
+@Profile("!reactive")
 public class WebSecurityConfig {
 
     @Autowired
@@ -34,6 +38,9 @@ public class WebSecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private ConcurrencyLimitFilter concurrencyLimitFilter;
+
     @Bean
     public DaoAuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
@@ -59,6 +66,7 @@ public class WebSecurityConfig {
             .csrf(csrf -> csrf
                 .ignoringRequestMatchers("/api/auth/**")
                 .ignoringRequestMatchers("/api/files/**")
+                .ignoringRequestMatchers(EndpointRequest.to("integrity"))
             )
             .sessionManagement(session -> session
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
@@ -66,16 +74,26 @@ public class WebSecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                .requestMatchers(EndpointRequest.to("integrity", "traces")).hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
             .authenticationProvider(authenticationProvider())
-            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+            // Overload is shed before the JWT filter spends a user lookup on the request
+            .addFilterBefore(concurrencyLimitFilter, JwtAuthenticationFilter.class);
 
         return http.build();
     }
 
     @Bean
     CorsConfigurationSource corsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", corsConfiguration());
+        return source;
+    }
+
+    // Shared with the reactive security configuration
+    static CorsConfiguration corsConfiguration() {
         CorsConfiguration configuration = new CorsConfiguration();
         
         // In production, these values should come from environment variables
@@ -92,9 +110,6 @@ public class WebSecurityConfig {
         configuration.setExposedHeaders(Arrays.asList("Content-Disposition"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L); // 1 hour cache for preflight requests
-        
-        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
-        source.registerCorsConfiguration("/**", configuration);
-        return source;
+        return configuration;
     }
 } 
\ No newline at end of file
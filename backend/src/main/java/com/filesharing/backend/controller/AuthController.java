@@ -2,23 +2,31 @@ package com.filesharing.backend.controller;
 
 import com.filesharing.backend.dto.JwtResponse;
 import com.filesharing.backend.dto.LoginRequest;
+import com.filesharing.backend.dto.RefreshTokenRequest;
 import com.filesharing.backend.dto.RegisterRequest;
 import com.filesharing.backend.model.User;
+import com.filesharing.backend.security.AuthenticationExecutor;
 import com.filesharing.backend.security.JwtTokenProvider;
 import com.filesharing.backend.security.UserDetailsImpl;
+import com.filesharing.backend.security.UserDetailsServiceImpl;
+import com.filesharing.backend.service.RefreshTokenService;
 import com.filesharing.backend.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
@@ -32,21 +40,66 @@ public class AuthController {
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
 
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private AuthenticationExecutor authenticationExecutor;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    // Password checks run on the dedicated auth pool, the request thread is released meanwhile
     @PostMapping("/login")
-    public ResponseEntity<JwtResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
-
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-        String jwt = jwtTokenProvider.generateJwtToken(authentication);
-
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        
-        return ResponseEntity.ok(new JwtResponse(
-                jwt,
-                userDetails.getId(),
-                userDetails.getUsername(),
-                userDetails.getEmail()));
+    public CompletableFuture<ResponseEntity<JwtResponse>> login(@Valid @RequestBody LoginRequest loginRequest) {
+        return authenticationExecutor.submit(() -> {
+            Authentication authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
+
+            UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+            String jwt = jwtTokenProvider.generateJwtToken(userDetails);
+            String refreshToken = refreshTokenService.createRefreshToken(userService.getUserById(userDetails.getId()));
+
+            return ResponseEntity.ok(new JwtResponse(
+                    jwt,
+                    refreshToken,
+                    jwtTokenProvider.getExpirationMs(),
+                    userDetails.getId(),
+                    userDetails.getUsername(),
+                    userDetails.getEmail()));
+        });
+    }
+
+    @PostMapping("/refresh")
+    public CompletableFuture<ResponseEntity<JwtResponse>> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        return authenticationExecutor.submit(() -> {
+            RefreshTokenService.RotatedToken rotated = refreshTokenService.rotateRefreshToken(request.getRefreshToken());
+            UserDetailsImpl userDetails = userDetailsService.build(rotated.getUser());
+            String jwt = jwtTokenProvider.generateJwtToken(userDetails);
+
+            return ResponseEntity.ok(new JwtResponse(
+                    jwt,
+                    rotated.getRefreshToken(),
+                    jwtTokenProvider.getExpirationMs(),
+                    userDetails.getId(),
+                    userDetails.getUsername(),
+                    userDetails.getEmail()));
+        });
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(
+            @RequestBody(required = false) RefreshTokenRequest request,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        if (StringUtils.hasText(authorization) && authorization.startsWith("Bearer ")) {
+            jwtTokenProvider.revokeJwtToken(authorization.substring(7));
+        }
+
+        if (request != null && StringUtils.hasText(request.getRefreshToken())) {
+            refreshTokenService.revokeRefreshToken(request.getRefreshToken());
+        }
+
+        return ResponseEntity.ok("Logged out successfully");
     }
 
     @PostMapping("/register")
@@ -66,4 +119,4 @@ public class AuthController {
 
         return ResponseEntity.ok("User registered successfully");
     }
-} 
\ No newline at end of file
+}
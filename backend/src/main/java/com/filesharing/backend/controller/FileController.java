@@ -1,12 +1,20 @@
 package com.filesharing.backend.controller;
 
 import com.filesharing.backend.dto.FileDto;
+import com.filesharing.backend.dto.BatchCopyRequest;
 import com.filesharing.backend.dto.BatchDownloadRequest;
+import com.filesharing.backend.dto.CopyFileRequest;
+import com.filesharing.backend.dto.FileExpiryRequest;
 import com.filesharing.backend.dto.RenameFileRequest;
+import com.filesharing.backend.exception.InvalidMultipartException;
 import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.multipart.MultipartStreamParser;
 import com.filesharing.backend.security.UserDetailsImpl;
 import com.filesharing.backend.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -14,33 +22,77 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/files")
+@Profile("!reactive")
 public class FileController {
 
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private FileService fileService;
 
-    @PostMapping("/upload")
+    // With file.upload.streaming the body is not resolved up front: the "file" part is parsed here
+    // and copied straight to storage, so every byte is written to disk once
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<FileDto> uploadFile(
-            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request,
             @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
         
-        FileEntity savedFile = fileService.saveFile(file, userDetails.getId());
+        FileEntity savedFile;
+        if (request instanceof MultipartHttpServletRequest) {
+            MultipartFile file = ((MultipartHttpServletRequest) request).getFile("file");
+            if (file == null) {
+                throw new InvalidMultipartException("Missing file part");
+            }
+            savedFile = fileService.saveFile(file, userDetails.getId());
+        } else {
+            savedFile = saveStreamedFile(request, userDetails.getId());
+        }
         
-        FileDto fileDto = FileDto.builder()
-                .id(savedFile.getId())
-                .fileName(savedFile.getFileName())
-                .fileType(savedFile.getFileType())
-                .fileSize(savedFile.getFileSize())
-                .uploadDate(savedFile.getUploadDate())
-                .build();
+        return ResponseEntity.ok().body(toFileDto(savedFile));
+    }
+
+    @PostMapping("/upload-multiple")
+    public ResponseEntity<List<FileDto>> uploadFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
+        
+        List<FileEntity> savedFiles = fileService.saveFiles(files, userDetails.getId());
+        
+        return ResponseEntity.ok().body(savedFiles.stream()
+                .map(FileController::toFileDto)
+                .collect(Collectors.toList()));
+    }
+
+    // Unpacks a ZIP or TAR archive on the server, every regular file becomes a file of its own
+    @PostMapping("/import")
+    public ResponseEntity<List<FileDto>> importArchive(
+            @RequestParam("file") MultipartFile archive,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
+        
+        List<FileEntity> importedFiles;
+        try (InputStream inputStream = archive.getInputStream()) {
+            importedFiles = fileService.importArchive(inputStream, userDetails.getId());
+        }
         
-        return ResponseEntity.ok().body(fileDto);
+        return ResponseEntity.ok().body(importedFiles.stream()
+                .map(FileController::toFileDto)
+                .collect(Collectors.toList()));
     }
 
     @GetMapping
@@ -96,21 +148,125 @@ public class FileController {
         return ResponseEntity.ok().body(updatedFile);
     }
 
+    // The file is deleted once the expiry passes; an empty expiresIn removes it
+    @PutMapping("/{id}/expiry")
+    public ResponseEntity<FileDto> setExpiry(
+            @PathVariable Long id,
+            @RequestBody FileExpiryRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+        
+        FileDto updatedFile = fileService.setExpiry(id, request.getExpiresIn(), userDetails.getId());
+        return ResponseEntity.ok().body(updatedFile);
+    }
+
+    // Server-side copy: the copy shares the stored bytes, nothing is downloaded or uploaded again
+    @PostMapping("/{id}/copy")
+    public ResponseEntity<FileDto> copyFile(
+            @PathVariable Long id,
+            @RequestBody(required = false) CopyFileRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
+        
+        String newName = request != null ? request.getNewName() : null;
+        FileEntity copy = fileService.copyFile(id, newName, userDetails.getId());
+        return ResponseEntity.ok().body(toFileDto(copy));
+    }
+    
+    @PostMapping("/copy")
+    public ResponseEntity<List<FileDto>> copyFiles(
+            @RequestBody BatchCopyRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
+        
+        List<FileEntity> copies = fileService.copyFiles(request.getFileIds(), userDetails.getId());
+        return ResponseEntity.ok().body(copies.stream()
+                .map(FileController::toFileDto)
+                .collect(Collectors.toList()));
+    }
+
     @PostMapping("/batch-download")
-    public ResponseEntity<Resource> batchDownload(
+    public ResponseEntity<StreamingResponseBody> batchDownload(
             @RequestBody BatchDownloadRequest request,
-            @AuthenticationPrincipal UserDetailsImpl userDetails) throws IOException {
+            @AuthenticationPrincipal UserDetailsImpl userDetails,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) throws IOException {
+        
+        List<FileEntity> files = fileService.getBatchDownloadFiles(request.getFileIds(), userDetails.getId());
+        
+        Optional<Resource> cachedArchive = fileService.findCachedBatchDownloadZip(files);
+        if (cachedArchive.isPresent()) {
+            return sendCachedArchive(cachedArchive.get().getFile(), httpRequest, httpResponse);
+        }
         
-        Resource zipResource = fileService.createBatchDownloadZip(request.getFileIds(), userDetails.getId());
+        // The archive is written straight to the response while it is being compressed
+        StreamingResponseBody body = outputStream -> fileService.writeBatchDownloadZip(files, outputStream);
         
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
-                .body(zipResource);
+                .body(body);
     }
     
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportFiles(@AuthenticationPrincipal UserDetailsImpl userDetails) {
+        Long userId = userDetails.getId();
+        StreamingResponseBody body = outputStream -> fileService.exportFilesAsNdjson(userId, outputStream);
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.ndjson\"")
+                .body(body);
+    }
+    
+    // Form fields before the file are skipped; anything after it is left for the container to discard
+    private FileEntity saveStreamedFile(HttpServletRequest request, Long userId) throws IOException {
+        MultipartStreamParser parser = MultipartStreamParser.forRequest(request.getContentType(), request.getInputStream());
+        MultipartStreamParser.Part part;
+        while ((part = parser.nextPart()) != null) {
+            if ("file".equals(part.getName()) && part.getFilename() != null) {
+                return fileService.saveFile(part.getFilename(), part.getContentType(), part.getInputStream(), userId);
+            }
+        }
+        throw new InvalidMultipartException("Missing file part");
+    }
+    
+    // Cached archives are handed to Tomcat's sendfile, so the bytes go from the page cache to the socket
+    // without being copied through the JVM. Returning null tells Spring MVC the response is handled.
+    private ResponseEntity<StreamingResponseBody> sendCachedArchive(
+            File archive, HttpServletRequest request, HttpServletResponse response) {
+        long length = archive.length();
+        
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"");
+            response.setContentLengthLong(length);
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, archive.getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, length);
+            return null;
+        }
+        
+        StreamingResponseBody body = outputStream -> Files.copy(archive.toPath(), outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(length)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                .body(body);
+    }
+
+    static FileDto toFileDto(FileEntity file) {
+        return FileDto.builder()
+                .id(file.getId())
+                .fileName(file.getFileName())
+                .fileType(file.getFileType())
+                .fileSize(file.getFileSize())
+                .uploadDate(file.getUploadDate())
+                .expiresAt(file.getExpiresAt())
+                .downloadCount(file.getDownloadCount())
+                .viewCount(file.getViewCount())
+                .build();
+    }
+
     // Helper method to determine content type
-    private String determineContentType(String filename) {
+    static String determineContentType(String filename) {
         if (filename == null) {
             return "application/octet-stream";
         }
@@ -0,0 +1,369 @@
+package com.filesharing.backend.controller;
+
+import com.filesharing.backend.cache.HotFileCache;
+import com.filesharing.backend.dto.BatchCopyRequest;
+import com.filesharing.backend.dto.BatchDownloadRequest;
+import com.filesharing.backend.dto.CopyFileRequest;
+import com.filesharing.backend.dto.FileExpiryRequest;
+import com.filesharing.backend.dto.FileDto;
+import com.filesharing.backend.dto.RenameFileRequest;
+import com.filesharing.backend.exception.InvalidMultipartException;
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.security.UserDetailsImpl;
+import com.filesharing.backend.service.FileService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Non-blocking variant of FileController served by Netty when the "reactive" profile is active.
+// Business rules stay in FileService; blocking service calls run on the bounded elastic scheduler
+// while file bytes are streamed with backpressure.
+@RestController
+@RequestMapping("/api/files")
+@Profile("reactive")
+public class ReactiveFileController {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Upper bound on buffers queued between the request body and the storage writer
+    private static final int UPLOAD_PREFETCH = 4;
+
+    @Autowired
+    private FileService fileService;
+
+    // The body is consumed as raw part events, so the "file" part is piped to storage as it arrives
+    // instead of being buffered to a temporary file by the multipart reader first
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<FileDto>> uploadFile(
+            @RequestBody Flux<PartEvent> partEvents,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        Long userId = userDetails.getId();
+        return partEvents.windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.switchOnFirst((signal, events) -> {
+                    PartEvent first = signal.get();
+                    if (first instanceof FilePartEvent && "file".equals(first.name())) {
+                        String filename = ((FilePartEvent) first).filename();
+                        String contentType = contentTypeOf(first.headers().getContentType());
+                        return readContent(events.map(PartEvent::content),
+                                input -> fileService.saveFile(filename, contentType, input, userId));
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.empty());
+                }))
+                .next()
+                .switchIfEmpty(Mono.error(() -> new InvalidMultipartException("Missing file part")))
+                .map(savedFile -> ResponseEntity.ok().body(FileController.toFileDto(savedFile)));
+    }
+
+    // Parts of a multipart body arrive one after another, so they are stored in order
+    @PostMapping(value = "/upload-multiple", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<List<FileDto>>> uploadFiles(
+            @RequestPart("files") Flux<FilePart> files,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return files.concatMap(file -> savePart(file, userDetails.getId()))
+                .map(FileController::toFileDto)
+                .collectList()
+                .map(savedFiles -> ResponseEntity.ok().body(savedFiles));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<List<FileDto>>> importArchive(
+            @RequestPart("file") FilePart archive,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return readPart(archive, input -> fileService.importArchive(input, userDetails.getId()))
+                .map(importedFiles -> ResponseEntity.ok().body(importedFiles.stream()
+                        .map(FileController::toFileDto)
+                        .collect(Collectors.toList())));
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<List<FileDto>>> getAllFiles(@AuthenticationPrincipal UserDetailsImpl userDetails) {
+        return Mono.fromCallable(() -> fileService.getAllFilesByUser(userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(files -> ResponseEntity.ok().body(files));
+    }
+
+    @GetMapping("/download/{id}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadFile(
+            @PathVariable Long id,
+            @AuthenticationPrincipal UserDetailsImpl userDetails,
+            ServerWebExchange exchange) {
+
+        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
+        return Mono.fromCallable(() -> {
+                    Resource resource = fileService.loadFileAsResource(id, userDetails.getId());
+                    return ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .contentLength(resource.contentLength())
+                            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
+                            .body(readResource(resource, bufferFactory));
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping("/view/{id}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> viewFile(
+            @PathVariable Long id,
+            @AuthenticationPrincipal UserDetailsImpl userDetails,
+            ServerWebExchange exchange) {
+
+        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
+        return Mono.fromCallable(() -> {
+                    Resource resource = fileService.viewFileAsResource(id, userDetails.getId());
+                    String contentType = FileController.determineContentType(resource.getFilename());
+                    return ResponseEntity.ok()
+                            .contentType(MediaType.parseMediaType(contentType))
+                            .contentLength(resource.contentLength())
+                            .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
+                            .body(readResource(resource, bufferFactory));
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<String>> deleteFile(
+            @PathVariable Long id,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return Mono.fromRunnable(() -> fileService.softDeleteFile(id, userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok().body("File deleted successfully")));
+    }
+
+    @PutMapping("/{id}/rename")
+    public Mono<ResponseEntity<FileDto>> renameFile(
+            @PathVariable Long id,
+            @RequestBody RenameFileRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return Mono.fromCallable(() -> fileService.renameFile(id, request.getNewName(), userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(updatedFile -> ResponseEntity.ok().body(updatedFile));
+    }
+
+    @PutMapping("/{id}/expiry")
+    public Mono<ResponseEntity<FileDto>> setExpiry(
+            @PathVariable Long id,
+            @RequestBody FileExpiryRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return Mono.fromCallable(() -> fileService.setExpiry(id, request.getExpiresIn(), userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(updatedFile -> ResponseEntity.ok().body(updatedFile));
+    }
+
+    @PostMapping("/{id}/copy")
+    public Mono<ResponseEntity<FileDto>> copyFile(
+            @PathVariable Long id,
+            @RequestBody(required = false) CopyFileRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        String newName = request != null ? request.getNewName() : null;
+        return Mono.fromCallable(() -> fileService.copyFile(id, newName, userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(copy -> ResponseEntity.ok().body(FileController.toFileDto(copy)));
+    }
+
+    @PostMapping("/copy")
+    public Mono<ResponseEntity<List<FileDto>>> copyFiles(
+            @RequestBody BatchCopyRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        return Mono.fromCallable(() -> fileService.copyFiles(request.getFileIds(), userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(copies -> ResponseEntity.ok().body(copies.stream()
+                        .map(FileController::toFileDto)
+                        .collect(Collectors.toList())));
+    }
+
+    @PostMapping("/batch-download")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> batchDownload(
+            @RequestBody BatchDownloadRequest request,
+            @AuthenticationPrincipal UserDetailsImpl userDetails,
+            ServerWebExchange exchange) {
+
+        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
+        return Mono.fromCallable(() -> fileService.getBatchDownloadFiles(request.getFileIds(), userDetails.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(files -> {
+                    Optional<Resource> cachedArchive = fileService.findCachedBatchDownloadZip(files);
+                    if (cachedArchive.isPresent()) {
+                        return sendCachedArchive(cachedArchive.get(), exchange);
+                    }
+                    return Mono.just(ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                            .body(streamArchive(files, bufferFactory)));
+                });
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<Flux<DataBuffer>> exportFiles(
+            @AuthenticationPrincipal UserDetailsImpl userDetails,
+            ServerWebExchange exchange) {
+
+        Long userId = userDetails.getId();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.ndjson\"")
+                .body(streamOutput(outputStream -> fileService.exportFilesAsNdjson(userId, outputStream),
+                        exchange.getResponse().bufferFactory()));
+    }
+
+    private Mono<FileEntity> savePart(FilePart file, Long userId) {
+        String contentType = contentTypeOf(file.headers().getContentType());
+        return readPart(file, input -> fileService.saveFile(file.filename(), contentType, input, userId));
+    }
+
+    private static String contentTypeOf(MediaType partType) {
+        return partType != null ? partType.toString() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private <T> Mono<T> readPart(FilePart part, InputReader<T> reader) {
+        return readContent(part.content(), reader);
+    }
+
+    // Bridge a part body into FileService through a pipe: the writer blocks when the pipe is full,
+    // which stops demand on the request body instead of buffering it
+    private <T> Mono<T> readContent(Flux<DataBuffer> content, InputReader<T> reader) {
+        PipedInputStream input = new PipedInputStream(BUFFER_SIZE);
+        PipedOutputStream output;
+        try {
+            output = new PipedOutputStream(input);
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+
+        Mono<Boolean> writer = DataBufferUtils.write(
+                        content.publishOn(Schedulers.boundedElastic(), UPLOAD_PREFETCH), output)
+                .doOnNext(DataBufferUtils::release)
+                .doFinally(signal -> closeQuietly(output))
+                .then(Mono.just(Boolean.TRUE));
+
+        Mono<T> result = Mono.fromCallable(() -> reader.read(input))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> closeQuietly(input));
+
+        return result.zipWith(writer, (value, written) -> value);
+    }
+
+    // Cached archives are written with Netty's zero-copy file transfer when the response supports it.
+    // The response is then complete, so no ResponseEntity is emitted for the result handler.
+    private Mono<ResponseEntity<Flux<DataBuffer>>> sendCachedArchive(Resource archive, ServerWebExchange exchange) {
+        try {
+            long length = archive.contentLength();
+            if (exchange.getResponse() instanceof ZeroCopyHttpOutputMessage) {
+                ZeroCopyHttpOutputMessage response = (ZeroCopyHttpOutputMessage) exchange.getResponse();
+                response.getHeaders().setContentType(MediaType.APPLICATION_OCTET_STREAM);
+                response.getHeaders().setContentLength(length);
+                response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"");
+                return response.writeWith(archive.getFile().toPath(), 0, length).then(Mono.empty());
+            }
+
+            return Mono.just(ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(length)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                    .body(readResource(archive, exchange.getResponse().bufferFactory())));
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private Flux<DataBuffer> streamArchive(List<FileEntity> files, DataBufferFactory bufferFactory) {
+        return streamOutput(outputStream -> fileService.writeBatchDownloadZip(files, outputStream), bufferFactory);
+    }
+
+    // The writer pushes into a pipe on a worker thread; the response pulls from the other end on demand
+    private Flux<DataBuffer> streamOutput(OutputWriter writer, DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            PipedInputStream input = new PipedInputStream(BUFFER_SIZE);
+            PipedOutputStream output;
+            try {
+                output = new PipedOutputStream(input);
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+
+            Mono.fromRunnable(() -> {
+                        try (PipedOutputStream pipeOutput = output) {
+                            writer.write(pipeOutput);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(null, error -> closeQuietly(input));
+
+            return DataBufferUtils.readInputStream(() -> input, bufferFactory, BUFFER_SIZE)
+                    .subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    // Cached files are copied straight from off-heap memory. Plain files are read with an
+    // AsynchronousFileChannel, only as fast as the client consumes them.
+    // Anything else falls back to the resource stream on the bounded elastic scheduler.
+    private Flux<DataBuffer> readResource(Resource resource, DataBufferFactory bufferFactory) throws IOException {
+        if (resource instanceof HotFileCache.CachedResource) {
+            return ((HotFileCache.CachedResource) resource).read(bufferFactory);
+        }
+        if (resource.isFile()) {
+            Path path = resource.getFile().toPath();
+            return DataBufferUtils.readAsynchronousFileChannel(
+                    () -> AsynchronousFileChannel.open(path, StandardOpenOption.READ), bufferFactory, BUFFER_SIZE);
+        }
+
+        return DataBufferUtils.readInputStream(resource::getInputStream, bufferFactory, BUFFER_SIZE)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @FunctionalInterface
+    private interface OutputWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface InputReader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing left to do with a broken pipe end
+        }
+    }
+}
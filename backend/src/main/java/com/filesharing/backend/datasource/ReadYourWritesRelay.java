@@ -0,0 +1,40 @@
+package com.filesharing.backend.datasource;
+
+import com.filesharing.backend.cache.InvalidationBus;
+import com.filesharing.backend.cache.InvalidationListener;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Shares read-your-writes marks between nodes, so a user who uploads on one node and lists on another
+// is still kept on the primary. Receivers stamp the mark with their own clock, so clock skew between
+// nodes does not shorten the window; the bus delay is far below the replication lag it covers for.
+@Component
+@ConditionalOnProperty(name = "db.replica.enabled", havingValue = "true")
+public class ReadYourWritesRelay {
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @PostConstruct
+    public void init() {
+        // The bus publishes once the write transaction commits, and not at all on rollback
+        routingDataSource.setWriteListener(userId -> invalidationBus.publish(InvalidationBus.USER_WRITES, userId.toString()));
+
+        invalidationBus.subscribe(InvalidationBus.USER_WRITES, new InvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                routingDataSource.recordWrite(Long.parseLong(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                routingDataSource.recordWriteByAnyone();
+            }
+        });
+    }
+}
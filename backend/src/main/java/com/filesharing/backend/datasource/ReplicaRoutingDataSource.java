@@ -0,0 +1,204 @@
+package com.filesharing.backend.datasource;
+
+import com.filesharing.backend.security.UserDetailsImpl;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Sends the connection of a readOnly transaction to a replica and everything else to the primary.
+// Replicas lagging more than the limit, or failing the lag check, are skipped until they catch up.
+// After a user commits a write, their reads stay on the primary for a while so they see their own changes;
+// ReadYourWritesRelay tells the other nodes, so this also holds behind a load balancer without sticky sessions.
+// Must sit behind a LazyConnectionDataSourceProxy: the transaction's readOnly flag is only known
+// once the first statement runs, after the transaction manager has asked for a connection.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ReplicaRoutingDataSource.class.getName());
+
+    static final String PRIMARY = "primary";
+
+    // Zero while the replica has replayed everything it received, otherwise the age of the last replayed commit.
+    // Idle primaries would otherwise look like lagging replicas.
+    private static final String LAG_QUERY = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final List<Replica> replicas;
+
+    private final long maxLagMillis;
+
+    private final long readYourWritesMillis;
+
+    private final Map<Long, Long> lastWriteByUser = new ConcurrentHashMap<>();
+
+    // Set when writes from other nodes may have been missed, every user then reads from the primary
+    private volatile long lastWriteByAnyone;
+
+    private volatile Consumer<Long> writeListener = userId -> { };
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicaPools,
+                                    Duration maxLag, Duration readYourWritesWindow) {
+        this.maxLagMillis = maxLag.toMillis();
+        this.readYourWritesMillis = readYourWritesWindow.toMillis();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        List<Replica> replicaList = new ArrayList<>();
+        replicaPools.forEach((name, pool) -> {
+            targets.put(name, pool);
+            replicaList.add(new Replica(name, pool));
+        });
+        this.replicas = Collections.unmodifiableList(replicaList);
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWriteOnCommit();
+            return PRIMARY;
+        }
+
+        if (System.currentTimeMillis() - lastWriteByAnyone < readYourWritesMillis) {
+            return PRIMARY;
+        }
+        Long userId = currentUserId();
+        if (userId != null) {
+            Long lastWrite = lastWriteByUser.get(userId);
+            if (lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesMillis) {
+                return PRIMARY;
+            }
+        }
+        return pickReplica();
+    }
+
+    // Round robin over the replicas that are currently usable, the primary if there are none
+    private String pickReplica() {
+        int count = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((start + i) % count);
+            if (replica.healthy && replica.lagMillis <= maxLagMillis) {
+                return replica.name;
+            }
+        }
+        return PRIMARY;
+    }
+
+    private void rememberWriteOnCommit() {
+        Long userId = currentUserId();
+        if (userId == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recordWrite(userId);
+            }
+        });
+        writeListener.accept(userId);
+    }
+
+    // Called while the write transaction is still open; the listener defers its own work to the commit
+    public void setWriteListener(Consumer<Long> writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    // A write by the user was committed, here or on another node
+    public void recordWrite(Long userId) {
+        lastWriteByUser.put(userId, System.currentTimeMillis());
+    }
+
+    public void recordWriteByAnyone() {
+        lastWriteByAnyone = System.currentTimeMillis();
+    }
+
+    // Without an authenticated user (background jobs, auth endpoints) there is nothing to stick to
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl) {
+            return ((UserDetailsImpl) authentication.getPrincipal()).getId();
+        }
+        return null;
+    }
+
+    @Scheduled(fixedDelayString = "${db.replica.lag-check-interval:PT5S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean wasHealthy = replica.healthy;
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                replica.lagMillis = resultSet.next() ? (long) (resultSet.getDouble(1) * 1000) : 0L;
+                replica.healthy = true;
+            } catch (SQLException e) {
+                replica.healthy = false;
+                if (wasHealthy) {
+                    logger.warning("Replica " + replica.name + " is unavailable, reads fall back to the primary: " + e.getMessage());
+                }
+            }
+            if (!wasHealthy && replica.healthy) {
+                logger.info("Replica " + replica.name + " is available again");
+            }
+        }
+
+        long cutoff = System.currentTimeMillis() - readYourWritesMillis;
+        lastWriteByUser.values().removeIf(lastWrite -> lastWrite < cutoff);
+    }
+
+    // Replication lag in seconds as last measured, negative while the replica is unreachable
+    public double getLagSeconds(String name) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(name)) {
+                return replica.healthy ? replica.lagMillis / 1000.0 : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.pool instanceof HikariDataSource) {
+                ((HikariDataSource) replica.pool).close();
+            }
+        }
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource pool;
+        private volatile long lagMillis;
+        // Not used until the first lag check has passed
+        private volatile boolean healthy;
+
+        Replica(String name, DataSource pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+}
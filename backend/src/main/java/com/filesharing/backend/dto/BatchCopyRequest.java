@@ -0,0 +1,17 @@
+package com.filesharing.backend.dto;
+
+import java.util.List;
+
+public class BatchCopyRequest {
+    private List<Long> fileIds;
+    
+    public BatchCopyRequest() {}
+    
+    public List<Long> getFileIds() {
+        return fileIds;
+    }
+    
+    public void setFileIds(List<Long> fileIds) {
+        this.fileIds = fileIds;
+    }
+}
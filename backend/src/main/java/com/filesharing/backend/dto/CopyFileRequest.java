@@ -0,0 +1,16 @@
+package com.filesharing.backend.dto;
+
+public class CopyFileRequest {
+    // Name of the copy, the source's name if empty
+    private String newName;
+    
+    public CopyFileRequest() {}
+    
+    public String getNewName() {
+        return newName;
+    }
+    
+    public void setNewName(String newName) {
+        this.newName = newName;
+    }
+}
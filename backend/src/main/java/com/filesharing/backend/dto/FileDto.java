@@ -18,4 +18,7 @@ public class FileDto {
     private LocalDateTime uploadDate;
     private boolean deleted;
     private LocalDateTime deletedAt;
+    private LocalDateTime expiresAt;
+    private long downloadCount;
+    private long viewCount;
 } 
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.filesharing.backend.dto;
+
+import java.time.Duration;
+
+public class FileExpiryRequest {
+    // ISO-8601 duration from now, e.g. "P7D"; null removes the expiry
+    private Duration expiresIn;
+    
+    public FileExpiryRequest() {}
+    
+    public Duration getExpiresIn() {
+        return expiresIn;
+    }
+    
+    public void setExpiresIn(Duration expiresIn) {
+        this.expiresIn = expiresIn;
+    }
+}
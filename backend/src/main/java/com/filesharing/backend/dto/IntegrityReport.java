@@ -0,0 +1,26 @@
+package com.filesharing.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IntegrityReport {
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private Long resumedFromId;
+    private Long checkpointId;
+    private boolean passCompleted;
+    private long filesVerified;
+    private long bytesVerified;
+    private long checksumsBackfilled;
+    private List<Long> corruptFileIds;
+    private List<Long> missingFileIds;
+    private List<String> orphanPaths;
+}
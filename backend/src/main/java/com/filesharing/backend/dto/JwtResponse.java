@@ -11,13 +11,18 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class JwtResponse {
     private String token;
+    @Builder.Default
     private String type = "Bearer";
+    private String refreshToken;
+    private long expiresIn;
     private Long id;
     private String username;
     private String email;
     
-    public JwtResponse(String token, Long id, String username, String email) {
+    public JwtResponse(String token, String refreshToken, long expiresIn, Long id, String username, String email) {
         this.token = token;
+        this.refreshToken = refreshToken;
+        this.expiresIn = expiresIn;
         this.id = id;
         this.username = username;
         this.email = email;
@@ -0,0 +1,14 @@
+package com.filesharing.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class FileTooLargeException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+
+    public FileTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package com.filesharing.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidArchiveException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+
+    public InvalidArchiveException(String message) {
+        super(message);
+    }
+
+    public InvalidArchiveException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.filesharing.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidMultipartException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+
+    public InvalidMultipartException(String message) {
+        super(message);
+    }
+}
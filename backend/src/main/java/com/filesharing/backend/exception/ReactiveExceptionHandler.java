@@ -0,0 +1,166 @@
+package com.filesharing.backend.exception;
+
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.io.FileNotFoundException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+// Counterpart of GlobalExceptionHandler for the reactive stack: same bodies, codes and statuses
+@RestControllerAdvice
+@Profile("reactive")
+public class ReactiveExceptionHandler {
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<ErrorDetails> handleResourceNotFoundException(ResourceNotFoundException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "RESOURCE_NOT_FOUND");
+        return new ResponseEntity<>(errorDetails, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(BadCredentialsException.class)
+    public ResponseEntity<ErrorDetails> handleBadCredentialsException(BadCredentialsException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "Invalid username or password",
+                description(exchange), "INVALID_CREDENTIALS");
+        return new ResponseEntity<>(errorDetails, HttpStatus.UNAUTHORIZED);
+    }
+
+    @ExceptionHandler(InvalidTokenException.class)
+    public ResponseEntity<ErrorDetails> handleInvalidTokenException(InvalidTokenException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INVALID_TOKEN");
+        return new ResponseEntity<>(errorDetails, HttpStatus.UNAUTHORIZED);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<ErrorDetails> handleRejectedExecutionException(RejectedExecutionException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "Server is busy, please retry shortly",
+                description(exchange), "SERVER_BUSY");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ErrorDetails> handleAccessDeniedException(AccessDeniedException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "Access denied",
+                description(exchange), "ACCESS_DENIED");
+        return new ResponseEntity<>(errorDetails, HttpStatus.FORBIDDEN);
+    }
+
+    // Raised when a buffered request body exceeds spring.codec.max-in-memory-size
+    @ExceptionHandler(DataBufferLimitException.class)
+    public ResponseEntity<ErrorDetails> handleDataBufferLimitException(DataBufferLimitException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "Upload exceeds the request size limit",
+                description(exchange), "FILE_TOO_LARGE");
+        return new ResponseEntity<>(errorDetails, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @ExceptionHandler(FileTooLargeException.class)
+    public ResponseEntity<ErrorDetails> handleFileTooLargeException(FileTooLargeException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "FILE_TOO_LARGE");
+        return new ResponseEntity<>(errorDetails, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @ExceptionHandler(InvalidArchiveException.class)
+    public ResponseEntity<ErrorDetails> handleInvalidArchiveException(InvalidArchiveException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INVALID_ARCHIVE");
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidMultipartException.class)
+    public ResponseEntity<ErrorDetails> handleInvalidMultipartException(InvalidMultipartException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INVALID_MULTIPART");
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidExpiryException.class)
+    public ResponseEntity<ErrorDetails> handleInvalidExpiryException(InvalidExpiryException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INVALID_EXPIRY");
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorDetails> handleIllegalArgumentException(IllegalArgumentException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INVALID_ARGUMENT");
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(FileNotFoundException.class)
+    public ResponseEntity<ErrorDetails> handleFileNotFoundException(FileNotFoundException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "File not found",
+                description(exchange), "FILE_NOT_FOUND");
+        return new ResponseEntity<>(errorDetails, HttpStatus.NOT_FOUND);
+    }
+
+    // @Valid request bodies; WebFlux reports them as WebExchangeBindException instead of MethodArgumentNotValidException
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<Object> handleWebExchangeBindException(WebExchangeBindException exception, ServerWebExchange exchange) {
+        Map<String, String> errors = new HashMap<>();
+        exception.getBindingResult().getFieldErrors().forEach(error ->
+                errors.put(error.getField(), error.getDefaultMessage()));
+
+        ValidationErrorResponse errorDetails = new ValidationErrorResponse(LocalDateTime.now(), "Validation failed",
+                description(exchange), "VALIDATION_FAILED", errors);
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<Object> handleConstraintViolation(ConstraintViolationException exception, ServerWebExchange exchange) {
+        Map<String, String> errors = new HashMap<>();
+        exception.getConstraintViolations().forEach(violation ->
+                errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+
+        ValidationErrorResponse errorDetails = new ValidationErrorResponse(LocalDateTime.now(), "Validation failed",
+                description(exchange), "VALIDATION_FAILED", errors);
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    // Unreadable bodies, missing or mistyped parameters
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ErrorDetails> handleServerWebInputException(ServerWebInputException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getReason(),
+                description(exchange), "INVALID_REQUEST");
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    // Framework errors such as unknown routes or unsupported methods keep their own status
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorDetails> handleResponseStatusException(ResponseStatusException exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getReason(),
+                description(exchange), "REQUEST_FAILED");
+        return new ResponseEntity<>(errorDetails, exception.getStatusCode());
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorDetails> handleGlobalException(Exception exception, ServerWebExchange exchange) {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), exception.getMessage(),
+                description(exchange), "INTERNAL_ERROR");
+        return new ResponseEntity<>(errorDetails, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    // Same format as WebRequest.getDescription(false) on the servlet stack
+    private static String description(ServerWebExchange exchange) {
+        return "uri=" + exchange.getRequest().getPath().value();
+    }
+}
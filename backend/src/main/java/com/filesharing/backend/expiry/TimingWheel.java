@@ -0,0 +1,117 @@
+package com.filesharing.backend.expiry;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// Hierarchical timing wheel of file ids by deadline. Deadlines are rounded up to whole ticks; the
+// tick number is split into 6-bit digits, one wheel of 64 slots per digit. An entry sits in the
+// wheel of the highest digit where its tick differs from the current one and moves down a wheel
+// each time that digit comes round, so adding is O(1) and every entry is moved at most once per
+// level, however far out its deadline is. Not thread-safe.
+public class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // Enough digits for any long tick number
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    private final long tickMillis;
+    private final Bucket[][] wheels = new Bucket[LEVELS][SLOTS];
+
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+        for (Bucket[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[slot] = new Bucket();
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns false if the deadline has already passed; the caller expires the entry itself
+    public boolean add(long id, long deadlineMillis) {
+        long tick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        if (tick <= currentTick) {
+            return false;
+        }
+        place(id, tick);
+        return true;
+    }
+
+    // Moves the wheel up to the given time and hands every entry that fell due to the consumer
+    public void advance(long nowMillis, LongConsumer due) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < target) {
+            currentTick++;
+            // Higher wheels whose digit just changed pass their slot down first, entries for this tick end up in wheel 0
+            long changed = currentTick ^ (currentTick - 1);
+            for (int level = (63 - Long.numberOfLeadingZeros(changed)) / SLOT_BITS; level > 0; level--) {
+                Bucket bucket = wheels[level][digit(currentTick, level)];
+                long[] ids = bucket.ids;
+                long[] ticks = bucket.ticks;
+                int count = bucket.size;
+                bucket.clear();
+                size -= count;
+                for (int i = 0; i < count; i++) {
+                    if (ticks[i] <= currentTick) {
+                        due.accept(ids[i]);
+                    } else {
+                        place(ids[i], ticks[i]);
+                    }
+                }
+            }
+            Bucket bucket = wheels[0][digit(currentTick, 0)];
+            for (int i = 0; i < bucket.size; i++) {
+                due.accept(bucket.ids[i]);
+            }
+            size -= bucket.size;
+            bucket.clear();
+        }
+    }
+
+    private void place(long id, long tick) {
+        int level = (63 - Long.numberOfLeadingZeros(tick ^ currentTick)) / SLOT_BITS;
+        wheels[level][digit(tick, level)].add(id, tick);
+        size++;
+    }
+
+    private static int digit(long tick, int level) {
+        return (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+    }
+
+    // Parallel primitive arrays, millions of boxed entries would cost several times the memory
+    private static class Bucket {
+        private long[] ids;
+        private long[] ticks;
+        private int size;
+
+        void add(long id, long tick) {
+            if (ids == null) {
+                ids = new long[4];
+                ticks = new long[4];
+            } else if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                ticks = Arrays.copyOf(ticks, size * 2);
+            }
+            ids[size] = id;
+            ticks[size] = tick;
+            size++;
+        }
+
+        // Drops the arrays too, a slot that held a burst should not keep its memory
+        void clear() {
+            ids = null;
+            ticks = null;
+            size = 0;
+        }
+    }
+}
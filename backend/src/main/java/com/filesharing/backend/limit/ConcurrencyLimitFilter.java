@@ -0,0 +1,182 @@
+package com.filesharing.backend.limit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.filesharing.backend.exception.ErrorDetails;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+// Sheds file API requests over the adaptive concurrency limit with 503 and Retry-After. It runs in the
+// security chain after CORS, so browsers can read the rejection, but before the JWT filter loads the user.
+// Streamed responses hold their permit until the async request completes.
+@Component
+@Profile("!reactive")
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !concurrencyLimiter.isEnabled()
+                || HttpMethod.OPTIONS.matches(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + "/api/files");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(Priority.of(request));
+        if (permit == null) {
+            reject(request, response);
+            return;
+        }
+
+        MeteredResponse meteredResponse = new MeteredResponse(response);
+        try {
+            filterChain.doFilter(request, meteredResponse);
+        } catch (IOException | ServletException | RuntimeException e) {
+            permit.release(0L, false);
+            throw e;
+        }
+
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    permit.release(transferred(request, meteredResponse), isOverloaded(meteredResponse.getStatus()));
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    permit.release(transferred(request, meteredResponse), true);
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    permit.release(transferred(request, meteredResponse), false);
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // The listener stays registered for the dispatch that follows
+                }
+            });
+        } else {
+            permit.release(transferred(request, meteredResponse), isOverloaded(meteredResponse.getStatus()));
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ErrorDetails errorDetails = new ErrorDetails(LocalDateTime.now(), "Server is busy, please retry shortly",
+                "uri=" + request.getRequestURI(), "SERVER_BUSY");
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1L, concurrencyLimiter.getRetryAfter().toSeconds())));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), errorDetails);
+    }
+
+    // Only rejections further down signal overload; other errors say nothing about capacity
+    private static boolean isOverloaded(int status) {
+        return status == HttpStatus.SERVICE_UNAVAILABLE.value() || status == HttpStatus.GATEWAY_TIMEOUT.value();
+    }
+
+    private static long transferred(HttpServletRequest request, MeteredResponse response) {
+        return Math.max(0L, request.getContentLengthLong()) + response.getBytesWritten();
+    }
+
+    // Counts response bytes, or takes the declared length for bodies Tomcat sends itself (sendfile)
+    private static class MeteredResponse extends HttpServletResponseWrapper {
+        private long declaredLength = -1L;
+        private CountingOutputStream outputStream;
+
+        MeteredResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            declaredLength = len;
+            super.setContentLength(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            declaredLength = len;
+            super.setContentLengthLong(len);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        long getBytesWritten() {
+            return Math.max(declaredLength, outputStream != null ? outputStream.count : 0L);
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private volatile long count;
+
+        CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
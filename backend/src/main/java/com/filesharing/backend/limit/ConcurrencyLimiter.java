@@ -0,0 +1,116 @@
+package com.filesharing.backend.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Adaptive cap on concurrent file API requests. Requests over the limit are refused right away
+// instead of waiting in Tomcat's queue, where they would only add latency for everyone.
+// Transfer latency grows with size, so samples are normalized per cost unit of bytes moved
+// before they reach the limit algorithm.
+@Component
+public class ConcurrencyLimiter {
+
+    private final boolean enabled;
+    private final double bulkShare;
+    private final long costUnit;
+    private final Duration retryAfter;
+
+    private final VegasLimit limit;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger bulkInflight = new AtomicInteger();
+
+    private final Map<Priority, Counter> rejected = new EnumMap<>(Priority.class);
+
+    public ConcurrencyLimiter(
+            @Value("${api.limit.enabled:true}") boolean enabled,
+            @Value("${api.limit.initial-limit:50}") int initialLimit,
+            @Value("${api.limit.min-limit:8}") int minLimit,
+            @Value("${api.limit.max-limit:400}") int maxLimit,
+            @Value("${api.limit.bulk-share:0.75}") double bulkShare,
+            @Value("${api.limit.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${api.limit.cost-unit:1MB}") DataSize costUnit,
+            @Value("${api.limit.retry-after:1s}") Duration retryAfter,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.bulkShare = bulkShare;
+        this.costUnit = Math.max(1L, costUnit.toBytes());
+        this.retryAfter = retryAfter;
+        this.limit = new VegasLimit(initialLimit, minLimit, maxLimit, backoffRatio);
+
+        Gauge.builder("api.limit.limit", limit, VegasLimit::getLimit).register(meterRegistry);
+        Gauge.builder("api.limit.inflight", inflight, AtomicInteger::get).tag("priority", "all").register(meterRegistry);
+        Gauge.builder("api.limit.inflight", bulkInflight, AtomicInteger::get).tag("priority", "bulk").register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            rejected.put(priority, Counter.builder("api.limit.rejected")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    // Returns null when the request has to be shed
+    public Permit tryAcquire(Priority priority) {
+        int currentLimit = limit.getLimit();
+        if (priority == Priority.BULK
+                && bulkInflight.incrementAndGet() > Math.max(1, (int) (currentLimit * bulkShare))) {
+            bulkInflight.decrementAndGet();
+            rejected.get(priority).increment();
+            return null;
+        }
+
+        int current = inflight.incrementAndGet();
+        if (current > currentLimit) {
+            inflight.decrementAndGet();
+            if (priority == Priority.BULK) {
+                bulkInflight.decrementAndGet();
+            }
+            rejected.get(priority).increment();
+            return null;
+        }
+        return new Permit(priority, current);
+    }
+
+    public class Permit {
+        private final Priority priority;
+        private final int inflightAtStart;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(Priority priority, int inflightAtStart) {
+            this.priority = priority;
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        // Safe to call more than once, async requests can report an error and then completion
+        public void release(long bytes, boolean overloaded) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inflight.decrementAndGet();
+            if (priority == Priority.BULK) {
+                bulkInflight.decrementAndGet();
+            }
+
+            long rtt = (System.nanoTime() - startNanos) / (1 + Math.max(0L, bytes) / costUnit);
+            limit.onSample(rtt, inflightAtStart, overloaded);
+        }
+    }
+}
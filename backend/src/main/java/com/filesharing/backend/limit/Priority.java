@@ -0,0 +1,24 @@
+package com.filesharing.backend.limit;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// Request classes of the file API. Bulk transfers may only fill part of the concurrency limit,
+// the rest is kept for cheap metadata calls.
+public enum Priority {
+    INTERACTIVE,
+    BULK;
+
+    public static Priority of(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/api/files/download/")
+                || path.startsWith("/api/files/view/")
+                || path.equals("/api/files/upload")
+                || path.equals("/api/files/upload-multiple")
+                || path.equals("/api/files/import")
+                || path.equals("/api/files/batch-download")
+                || path.equals("/api/files/export")) {
+            return BULK;
+        }
+        return INTERACTIVE;
+    }
+}
@@ -0,0 +1,73 @@
+package com.filesharing.backend.limit;
+
+import java.util.Arrays;
+
+// TCP Vegas applied to request concurrency. The lowest recent latency is taken as the no-load baseline;
+// how far a sample is above it estimates how many requests are queued rather than being served.
+// A short queue grows the limit additively, a long one shrinks it, and overload responses cut it
+// multiplicatively (AIMD). The baseline is the minimum over a ring of sample windows, so it follows
+// lasting shifts (a slower disk, a different mix of requests) once the old windows rotate out.
+class VegasLimit {
+
+    private static final int ALPHA = 3;
+    private static final int BETA = 6;
+
+    private static final int WINDOW_SAMPLES = 500;
+    private static final int WINDOWS = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    private final long[] windowMinRtt = new long[WINDOWS];
+    private int window;
+    private int windowSamples;
+
+    private double limit;
+
+    VegasLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        Arrays.fill(windowMinRtt, Long.MAX_VALUE);
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+
+        if (++windowSamples > WINDOW_SAMPLES) {
+            window = (window + 1) % WINDOWS;
+            windowMinRtt[window] = Long.MAX_VALUE;
+            windowSamples = 1;
+        }
+        windowMinRtt[window] = Math.min(windowMinRtt[window], rttNanos);
+
+        // With most of the limit unused, latency says nothing about whether the limit is too low
+        if (inflight * 2 < limit) {
+            return;
+        }
+
+        long baseline = Long.MAX_VALUE;
+        for (long rtt : windowMinRtt) {
+            baseline = Math.min(baseline, rtt);
+        }
+        double queue = limit * (1.0 - (double) baseline / rttNanos);
+        double step = Math.max(1.0, Math.log10(limit));
+        if (queue <= ALPHA * step) {
+            limit = Math.min(maxLimit, limit + step);
+        } else if (queue >= BETA * step) {
+            limit = Math.max(minLimit, limit - step);
+        }
+    }
+}
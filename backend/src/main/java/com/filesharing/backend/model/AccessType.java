@@ -0,0 +1,6 @@
+package com.filesharing.backend.model;
+
+public enum AccessType {
+    DOWNLOAD,
+    VIEW
+}
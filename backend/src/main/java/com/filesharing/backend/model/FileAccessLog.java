@@ -0,0 +1,38 @@
+package com.filesharing.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Audit trail of downloads and views. Rows are written in batches by AccessLog, not through JPA.
+@Entity
+@Table(name = "file_access_log", indexes = {
+        @Index(name = "idx_file_access_log_file_id", columnList = "file_id"),
+        @Index(name = "idx_file_access_log_user_id", columnList = "user_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileAccessLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private AccessType accessType;
+
+    @Column(nullable = false)
+    private LocalDateTime accessedAt;
+}
@@ -5,10 +5,16 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+// file_path and replica_path are looked up when counting references to a shared blob and when moving one
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_expires_at", columnList = "expiresAt"),
+        @Index(name = "idx_files_file_path", columnList = "filePath"),
+        @Index(name = "idx_files_replica_path", columnList = "replicaPath")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -31,15 +37,47 @@ public class FileEntity {
     @Column(nullable = false)
     private String filePath;
 
+    // Second copy on another storage volume when replication is enabled
+    @Column
+    private String replicaPath;
+
+    // SHA-256 of the stored bytes, recorded at upload time
+    @Column(length = 64)
+    private String checksum;
+
     @Column(nullable = false)
     private LocalDateTime uploadDate;
     
     @Column(nullable = false)
+    @Builder.Default
     private boolean deleted = false;
     
     @Column
     private LocalDateTime deletedAt;
 
+    // The file is deleted once this passes, null keeps it until the owner deletes it
+    @Column
+    private LocalDateTime expiresAt;
+
+    // Set once the bytes of a soft-deleted file were removed after the retention period
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    private boolean blobPurged;
+
+    // Maintained in batches by AccessLog and never written through JPA, so saving an entity
+    // cannot overwrite increments made since it was loaded
+    @Column(nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private long downloadCount;
+
+    @Column(nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private long viewCount;
+
+    // Last download or view, null if never read; decides when a file moves to the cold tier
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime lastAccessedAt;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User owner;
@@ -30,5 +30,6 @@ public class User {
     private String password;
 
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Builder.Default
     private List<FileEntity> files = new ArrayList<>();
 } 
\ No newline at end of file
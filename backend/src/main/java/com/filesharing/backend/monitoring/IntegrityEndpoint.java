@@ -0,0 +1,35 @@
+package com.filesharing.backend.monitoring;
+
+import com.filesharing.backend.dto.IntegrityReport;
+import com.filesharing.backend.service.IntegrityScrubService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Exposes the integrity scrubber at /actuator/integrity, restricted to admin users
+@Component
+@Endpoint(id = "integrity")
+public class IntegrityEndpoint {
+
+    @Autowired
+    private IntegrityScrubService integrityScrubService;
+
+    @ReadOperation
+    public IntegrityReport lastReport() {
+        return integrityScrubService.getLastReport();
+    }
+
+    // Starts a scrub in the background, the report is read back with GET
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> scrub() {
+        if (integrityScrubService.startScrub()) {
+            return new WebEndpointResponse<>(Map.of("started", true), 202);
+        }
+        return new WebEndpointResponse<>(Map.of("started", false, "reason", "scrub already in progress"), 409);
+    }
+}
@@ -0,0 +1,42 @@
+package com.filesharing.backend.monitoring;
+
+import com.filesharing.backend.tracing.Trace;
+import com.filesharing.backend.tracing.TraceExporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Exposes recently exported traces as span trees at /actuator/traces and /actuator/traces/{traceId},
+// restricted to admin users
+@Component
+@Endpoint(id = "traces")
+public class TracesEndpoint {
+
+    @Autowired
+    private TraceExporter traceExporter;
+
+    @ReadOperation
+    public List<Map<String, Object>> recent() {
+        List<Map<String, Object>> traces = new ArrayList<>();
+        for (Trace trace : traceExporter.recent()) {
+            traces.add(trace.toTree());
+        }
+        return traces;
+    }
+
+    @ReadOperation
+    public Map<String, Object> trace(@Selector String traceId) {
+        for (Trace trace : traceExporter.recent()) {
+            if (trace.getTraceId().equals(traceId)) {
+                return trace.toTree();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,269 @@
+package com.filesharing.backend.multipart;
+
+import com.filesharing.backend.exception.InvalidMultipartException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Reads a multipart/form-data body front to back without spooling parts anywhere.
+// Each part's content is an InputStream over the request itself that ends at the next boundary,
+// so a caller can copy an upload straight to its final location. Moving to the next part skips
+// whatever is left of the current one.
+public class MultipartStreamParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    private final InputStream input;
+
+    // CRLF "--" boundary; the first boundary has no leading CRLF, so the buffer starts with one
+    private final byte[] delimiter;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    private boolean endOfInput;
+
+    private boolean finished;
+
+    private PartInputStream currentPart;
+
+    public MultipartStreamParser(InputStream input, String boundary) {
+        if (!StringUtils.hasLength(boundary) || boundary.length() > 70) {
+            throw new InvalidMultipartException("Invalid multipart boundary");
+        }
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    public static MultipartStreamParser forRequest(String contentType, InputStream input) {
+        MediaType mediaType;
+        try {
+            mediaType = contentType != null ? MediaType.parseMediaType(contentType) : null;
+        } catch (IllegalArgumentException e) {
+            mediaType = null;
+        }
+        if (mediaType == null || !MediaType.MULTIPART_FORM_DATA.includes(mediaType)) {
+            throw new InvalidMultipartException("Request is not multipart/form-data");
+        }
+        String boundary = mediaType.getParameter("boundary");
+        if (boundary != null && boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return new MultipartStreamParser(input, boundary);
+    }
+
+    // Returns null after the closing boundary
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (currentPart == null) {
+            // Skip the preamble up to the first boundary
+            currentPart = new PartInputStream();
+        }
+        currentPart.skipRemaining();
+
+        if (!fill(2)) {
+            throw new InvalidMultipartException("Multipart body ends without a closing boundary");
+        }
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            currentPart = null;
+            return null;
+        }
+
+        // Transport padding may follow the boundary before its line break
+        readLine();
+        Map<String, String> headers = readHeaders();
+        currentPart = new PartInputStream();
+        return new Part(headers, currentPart);
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int headerBytes = 0;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_SIZE) {
+                throw new InvalidMultipartException("Multipart headers are too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    // Header lines are UTF-8, which is what browsers send for non-ASCII filenames
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = position; i + 1 < limit; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+                    position = i + 2;
+                    return line;
+                }
+            }
+            if (!fill(limit - position + 1)) {
+                throw new InvalidMultipartException("Multipart body ends inside the part headers");
+            }
+        }
+    }
+
+    // Makes at least the given number of bytes available from position, unless the input ends first
+    private boolean fill(int required) throws IOException {
+        if (limit - position >= required) {
+            return true;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < required && !endOfInput) {
+            if (limit == buffer.length) {
+                throw new InvalidMultipartException("Multipart header line is too long");
+            }
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - position >= required;
+    }
+
+    // Index of the delimiter in the buffered bytes, or -1
+    private int findDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = position; i <= last; i++) {
+            if (buffer[i] != '\r') {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static class Part {
+        private final Map<String, String> headers;
+        private final InputStream content;
+        private final ContentDisposition disposition;
+
+        Part(Map<String, String> headers, InputStream content) {
+            this.headers = headers;
+            this.content = content;
+            String value = headers.get(HttpHeaders.CONTENT_DISPOSITION.toLowerCase(Locale.ROOT));
+            ContentDisposition parsed;
+            try {
+                parsed = value != null ? ContentDisposition.parse(value) : ContentDisposition.empty();
+            } catch (IllegalArgumentException e) {
+                parsed = ContentDisposition.empty();
+            }
+            this.disposition = parsed;
+        }
+
+        public String getName() {
+            return disposition.getName();
+        }
+
+        // Null for plain form fields
+        public String getFilename() {
+            return disposition.getFilename();
+        }
+
+        public String getContentType() {
+            return headers.get(HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ROOT));
+        }
+
+        public InputStream getInputStream() {
+            return content;
+        }
+    }
+
+    private class PartInputStream extends InputStream {
+        private final byte[] single = new byte[1];
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (done || currentPart != this) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+
+            while (true) {
+                int found = findDelimiter();
+                int available;
+                if (found >= 0) {
+                    available = found - position;
+                    if (available == 0) {
+                        position += delimiter.length;
+                        done = true;
+                        return -1;
+                    }
+                } else {
+                    // The tail may hold the start of a delimiter, so it stays buffered until more arrives
+                    available = limit - position - (delimiter.length - 1);
+                }
+
+                if (available > 0) {
+                    int count = Math.min(available, length);
+                    System.arraycopy(buffer, position, target, offset, count);
+                    position += count;
+                    return count;
+                }
+                if (!fill(limit - position + 1)) {
+                    throw new InvalidMultipartException("Multipart body ends inside a part");
+                }
+            }
+        }
+
+        @Override
+        public int available() {
+            int found = findDelimiter();
+            return done ? 0 : Math.max(0, (found >= 0 ? found : limit - delimiter.length + 1) - position);
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] discard = new byte[BUFFER_SIZE];
+            while (read(discard, 0, discard.length) >= 0) {
+                // Drain up to the next boundary
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.filesharing.backend.multipart;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+import java.util.Set;
+
+// Leaves requests to the given endpoints unresolved, so their handlers can read the body with
+// MultipartStreamParser instead of letting the servlet container spool every part to disk first.
+// All other multipart requests are resolved by the container as before.
+public class StreamingMultipartResolver extends StandardServletMultipartResolver {
+
+    private final Set<String> streamingPaths;
+
+    public StreamingMultipartResolver(Set<String> streamingPaths) {
+        this.streamingPaths = streamingPaths;
+    }
+
+    @Override
+    public boolean isMultipart(HttpServletRequest request) {
+        return super.isMultipart(request) && !isStreamed(request);
+    }
+
+    private boolean isStreamed(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return "POST".equals(request.getMethod()) && streamingPaths.contains(path);
+    }
+}
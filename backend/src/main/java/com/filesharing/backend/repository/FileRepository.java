@@ -2,6 +2,7 @@ package com.filesharing.backend.repository;
 
 import com.filesharing.backend.model.FileEntity;
 import com.filesharing.backend.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -14,16 +15,93 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface FileRepository extends JpaRepository<FileEntity, Long> {
+public interface FileRepository extends JpaRepository<FileEntity, Long>, FileRepositoryCustom {
     // Find all non-deleted files by owner
     List<FileEntity> findByOwnerAndDeletedFalse(User owner);
     
     // Find a specific non-deleted file by ID and owner
     Optional<FileEntity> findByIdAndOwnerAndDeletedFalse(Long id, User owner);
     
-    // Soft delete method
+    // Batch lookups name the owner and state too, so only the owner's live partition is searched
+    List<FileEntity> findByIdInAndOwnerAndDeletedFalse(List<Long> ids, User owner);
+    
+    // Soft delete method; the deleted and owner conditions keep the update to one live partition
     @Modifying
     @Transactional
-    @Query("UPDATE FileEntity f SET f.deleted = true, f.deletedAt = :deletedAt WHERE f.id = :id AND f.owner = :owner")
+    @Query("UPDATE FileEntity f SET f.deleted = true, f.deletedAt = :deletedAt WHERE f.id = :id AND f.owner = :owner AND f.deleted = false")
     int softDeleteByIdAndOwner(@Param("id") Long id, @Param("owner") User owner, @Param("deletedAt") LocalDateTime deletedAt);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileEntity f SET f.expiresAt = :expiresAt WHERE f.id = :id AND f.owner = :owner AND f.deleted = false")
+    int updateExpiresAt(@Param("id") Long id, @Param("owner") User owner, @Param("expiresAt") LocalDateTime expiresAt);
+    
+    // Of the given files, those past their expiry. Rows another node is expiring right now are skipped, not waited for.
+    @Query(value = "SELECT id FROM files WHERE id IN (:ids) AND deleted = false AND expires_at <= :now FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Long> lockExpired(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+    
+    // Expired files in expiry order, for the sweep that catches what no timing wheel held
+    @Query(value = "SELECT id FROM files WHERE deleted = false AND expires_at <= :now ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Long> lockExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+    
+    // Expiry is a soft delete, the bytes go after the purge retention like any deleted file
+    @Modifying
+    @Query("UPDATE FileEntity f SET f.deleted = true, f.deletedAt = :now WHERE f.id IN :ids AND f.deleted = false")
+    int expire(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+    
+    // Keyset paging used by the integrity scrubber
+    List<FileEntity> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    
+    // Every stored path, including soft-deleted files whose bytes are still on disk
+    @Query("SELECT f.filePath FROM FileEntity f")
+    List<String> findAllFilePaths();
+    
+    @Query("SELECT f.replicaPath FROM FileEntity f WHERE f.replicaPath IS NOT NULL")
+    List<String> findAllReplicaPaths();
+    
+    // Moves only succeed if the copy was not relocated or removed in the meantime. Copies can be
+    // shared by several files, so every row pointing at the old path moves along.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileEntity f SET f.filePath = :newPath WHERE f.filePath = :oldPath")
+    int moveFilePath(@Param("oldPath") String oldPath, @Param("newPath") String newPath);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileEntity f SET f.replicaPath = :newPath WHERE f.replicaPath = :oldPath")
+    int moveReplicaPath(@Param("oldPath") String oldPath, @Param("newPath") String newPath);
+    
+    // Files still referring to a stored copy; a copy is only removed once nothing refers to it
+    @Query("SELECT COUNT(f) FROM FileEntity f WHERE (f.filePath = :location OR f.replicaPath = :location) AND f.blobPurged = false")
+    long countReferences(@Param("location") String location);
+    
+    // Hot files nobody has read since the cutoff, in id order; packed files stay in their pack
+    @Query("SELECT f FROM FileEntity f WHERE f.id > :cursor AND f.deleted = false AND f.fileSize >= :minSize "
+            + "AND COALESCE(f.lastAccessedAt, f.uploadDate) < :cutoff "
+            + "AND f.filePath NOT LIKE 'pack:%' AND f.filePath NOT LIKE :coldPrefix ORDER BY f.id")
+    List<FileEntity> findIdleHotFiles(@Param("cursor") Long cursor, @Param("cutoff") LocalDateTime cutoff,
+                                      @Param("minSize") Long minSize, @Param("coldPrefix") String coldPrefix, Pageable pageable);
+    
+    // Moves a stored file between tiers, with every file sharing it, unless it was moved in the meantime
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileEntity f SET f.filePath = :newPath, f.replicaPath = :replicaPath WHERE f.filePath = :oldPath")
+    int relocate(@Param("oldPath") String oldPath, @Param("newPath") String newPath, @Param("replicaPath") String replicaPath);
+    
+    // Soft-deleted files past the retention period whose bytes are still stored
+    List<FileEntity> findByDeletedTrueAndBlobPurgedFalseAndDeletedAtBeforeOrderByIdAsc(LocalDateTime cutoff, Pageable pageable);
+    
+    @Modifying
+    @Transactional
+    // deletedAt lets the partitioned table go straight to the tombstone month holding the row
+    @Query("UPDATE FileEntity f SET f.blobPurged = true "
+            + "WHERE f.id = :id AND f.deleted = true AND f.deletedAt = :deletedAt AND f.blobPurged = false")
+    int markBlobPurged(@Param("id") Long id, @Param("deletedAt") LocalDateTime deletedAt);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileEntity f SET f.checksum = :checksum WHERE f.id = :id")
+    int updateChecksum(@Param("id") Long id, @Param("checksum") String checksum);
 } 
\ No newline at end of file
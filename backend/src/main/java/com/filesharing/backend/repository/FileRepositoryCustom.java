@@ -0,0 +1,10 @@
+package com.filesharing.backend.repository;
+
+import com.filesharing.backend.model.FileEntity;
+
+import java.util.List;
+
+public interface FileRepositoryCustom {
+    // Inserts new rows in JDBC batches and sets their generated ids
+    List<FileEntity> insertAll(List<FileEntity> files);
+}
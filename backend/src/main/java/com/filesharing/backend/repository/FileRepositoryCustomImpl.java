@@ -0,0 +1,64 @@
+package com.filesharing.backend.repository;
+
+import com.filesharing.backend.model.FileEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+
+// IDENTITY ids stop Hibernate from batching inserts, so bulk ingestion goes through plain JDBC
+public class FileRepositoryCustomImpl implements FileRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO files "
+            + "(file_name, file_type, file_size, file_path, replica_path, checksum, upload_date, deleted, user_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${file.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    @Transactional
+    public List<FileEntity> insertAll(List<FileEntity> files) {
+        for (int from = 0; from < files.size(); from += batchSize) {
+            List<FileEntity> batch = files.subList(from, Math.min(files.size(), from + batchSize));
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, new String[] {"id"})) {
+                    for (FileEntity file : batch) {
+                        statement.setString(1, file.getFileName());
+                        statement.setString(2, file.getFileType());
+                        statement.setLong(3, file.getFileSize());
+                        statement.setString(4, file.getFilePath());
+                        statement.setString(5, file.getReplicaPath());
+                        statement.setString(6, file.getChecksum());
+                        statement.setTimestamp(7, Timestamp.valueOf(file.getUploadDate()));
+                        statement.setBoolean(8, file.isDeleted());
+                        statement.setLong(9, file.getOwner().getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    
+                    // Keys come back in insertion order
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (FileEntity file : batch) {
+                            if (!keys.next()) {
+                                throw new IllegalStateException("Driver returned fewer generated ids than inserted rows");
+                            }
+                            file.setId(keys.getLong(1));
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        return files;
+    }
+}
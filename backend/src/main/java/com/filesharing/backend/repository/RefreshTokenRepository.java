@@ -0,0 +1,38 @@
+package com.filesharing.backend.repository;
+
+import com.filesharing.backend.model.RefreshToken;
+import com.filesharing.backend.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+    
+    // Revokes a token only if it was still valid; two refreshes racing with the same token see 1 and 0
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.revoked = true, t.replacedAt = :now WHERE t.id = :id AND t.revoked = false")
+    int rotateIfActive(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    // Read from the database, not the persistence context, to see a rotation committed meanwhile
+    @Query("SELECT t.replacedAt FROM RefreshToken t WHERE t.id = :id")
+    LocalDateTime findReplacedAt(@Param("id") Long id);
+    
+    // Used when a rotated token is presented again, which means it has leaked
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefreshToken t SET t.revoked = true WHERE t.user = :user AND t.revoked = false")
+    int revokeAllByUser(@Param("user") User user);
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RefreshToken t WHERE t.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,45 @@
+package com.filesharing.backend.security;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Bounded pool for BCrypt-heavy work (login, token refresh) so a burst of logins cannot take
+// request threads away from file transfers. When the queue is full, work is rejected right away
+// with a RejectedExecutionException, which is reported to the client as 503.
+// Deliberately not an Executor bean, which would replace Spring Boot's applicationTaskExecutor.
+@Component
+public class AuthenticationExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public AuthenticationExecutor(
+            @Value("${auth.executor.pool-size:4}") int poolSize,
+            @Value("${auth.executor.queue-capacity:100}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "auth-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -2,6 +2,7 @@ package com.filesharing.backend.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -24,14 +25,23 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private int jwtExpirationMs;
 
+    @Autowired
+    private TokenRevocationList revocationList;
+
     private Key getSigningKey() {
         byte[] keyBytes = jwtSecret.getBytes(StandardCharsets.UTF_8);
         return Keys.hmacShaKeyFor(keyBytes);
     }
 
+    public long getExpirationMs() {
+        return jwtExpirationMs;
+    }
+
     public String generateJwtToken(Authentication authentication) {
-        UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
-        
+        return generateJwtToken((UserDetails) authentication.getPrincipal());
+    }
+
+    public String generateJwtToken(UserDetails userPrincipal) {
         return Jwts.builder()
                 .setSubject(userPrincipal.getUsername())
                 .setIssuedAt(new Date())
@@ -66,6 +76,11 @@ public class JwtTokenProvider {
                 return false;
             }
             
+            if (revocationList.isRevoked(claims.getId())) {
+                logger.warning("JWT token has been revoked");
+                return false;
+            }
+            
             return true;
         } catch (MalformedJwtException e) {
             logger.warning("Invalid JWT token: " + e.getMessage());
@@ -75,8 +90,23 @@ public class JwtTokenProvider {
             logger.warning("JWT token is unsupported: " + e.getMessage());
         } catch (IllegalArgumentException e) {
             logger.warning("JWT claims string is empty: " + e.getMessage());
+        } catch (io.jsonwebtoken.security.SecurityException e) {
+            logger.warning("Invalid JWT signature: " + e.getMessage());
         }
 
         return false;
     }
+
+    // Access tokens are short-lived, so revocation only has to be remembered until they expire
+    public void revokeJwtToken(String token) {
+        if (!validateJwtToken(token)) {
+            return;
+        }
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(getSigningKey())
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+        revocationList.revoke(claims.getId(), claims.getExpiration().getTime());
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.filesharing.backend.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.logging.Logger;
+
+// Reactive counterpart of JwtAuthenticationFilter. Not a @Component on purpose:
+// WebFilter beans are added to every exchange, so it is only registered in the security chain.
+public class ReactiveJwtAuthenticationFilter implements WebFilter {
+
+    private static final Logger logger = Logger.getLogger(ReactiveJwtAuthenticationFilter.class.getName());
+
+    private final JwtTokenProvider tokenProvider;
+
+    private final UserDetailsService userDetailsService;
+
+    public ReactiveJwtAuthenticationFilter(JwtTokenProvider tokenProvider, UserDetailsService userDetailsService) {
+        this.tokenProvider = tokenProvider;
+        this.userDetailsService = userDetailsService;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String jwt = parseJwt(exchange.getRequest());
+        if (jwt == null) {
+            return chain.filter(exchange);
+        }
+
+        // Token validation and the user lookup are blocking, keep them off the event loop
+        return Mono.fromCallable(() -> authenticate(jwt))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.warning("Cannot set user authentication: " + e.getMessage());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(authentication -> authentication
+                        .map(auth -> chain.filter(exchange)
+                                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(auth)))
+                        .orElseGet(() -> chain.filter(exchange)));
+    }
+
+    private Optional<Authentication> authenticate(String jwt) {
+        if (!tokenProvider.validateJwtToken(jwt)) {
+            return Optional.empty();
+        }
+
+        String username = tokenProvider.getUsernameFromJwtToken(jwt);
+        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        return Optional.of(new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities()));
+    }
+
+    private String parseJwt(ServerHttpRequest request) {
+        // Only accept JWT tokens from the Authorization header
+        String headerAuth = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.hasText(headerAuth) && headerAuth.startsWith("Bearer ")) {
+            return headerAuth.substring(7);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,152 @@
+package com.filesharing.backend.security;
+
+import com.filesharing.backend.cache.InvalidationBus;
+import com.filesharing.backend.cache.InvalidationListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+// In-memory set of revoked access token ids (jti), checked on every request without a database round-trip.
+// A Bloom filter answers the common "not revoked" case; its rare positives are confirmed against the exact set.
+// Entries only live until the token would have expired anyway, so both structures stay small.
+// Revocations are shared with the other nodes through the invalidation bus.
+@Component
+public class TokenRevocationList {
+
+    private static final Logger logger = Logger.getLogger(TokenRevocationList.class.getName());
+
+    private final int expectedInsertions;
+
+    private final double falsePositiveRate;
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter filter;
+
+    private final InvalidationBus invalidationBus;
+
+    public TokenRevocationList(
+            @Value("${jwt.revocation.expected-insertions:100000}") int expectedInsertions,
+            @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+            InvalidationBus invalidationBus) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.invalidationBus = invalidationBus;
+
+        invalidationBus.subscribe(InvalidationBus.REVOKED_TOKENS, new InvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                int separator = key.lastIndexOf(':');
+                add(key.substring(0, separator), Long.parseLong(key.substring(separator + 1)));
+            }
+
+            @Override
+            public void invalidateAll() {
+                logger.warning("Token revocations from other nodes may have been missed");
+            }
+        });
+    }
+
+    // The bus applies the revocation on this node too
+    public void revoke(String jti, long expiresAtMillis) {
+        if (jti == null || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        invalidationBus.publish(InvalidationBus.REVOKED_TOKENS, jti + ":" + expiresAtMillis);
+    }
+
+    // Revocations are rare, so writers synchronize with the rebuild while readers stay lock-free
+    private synchronized void add(String jti, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        revoked.put(jti, expiresAtMillis);
+        filter.put(jti);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        Long expiresAt = revoked.get(jti);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    // Bloom filters cannot delete, so expired ids are dropped by rebuilding from the exact set
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval:PT1M}")
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        if (!revoked.values().removeIf(expiresAt -> expiresAt <= now)) {
+            return;
+        }
+
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedInsertions, revoked.size() * 2), falsePositiveRate);
+        revoked.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+    }
+
+    static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, optimalBits);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        void put(String key) {
+            long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+            long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << (bit & 63);
+                long current;
+                do {
+                    current = bits.get(index);
+                } while ((current & mask) == 0 && !bits.compareAndSet(index, current, current | mask));
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+            long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the UTF-8 bytes with a seed, finished with a murmur3 mix
+        private static long hash(String key, long seed) {
+            long hash = 0xCBF29CE484222325L ^ seed;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001B3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB9FE1A85EC53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class UserDetailsImpl implements UserDetails {
@@ -23,19 +24,30 @@ public class UserDetailsImpl implements UserDetails {
     private Collection<? extends GrantedAuthority> authorities;
 
     public UserDetailsImpl(Long id, String username, String email, String password) {
+        this(id, username, email, password, false);
+    }
+
+    public UserDetailsImpl(Long id, String username, String email, String password, boolean admin) {
         this.id = id;
         this.username = username;
         this.email = email;
         this.password = password;
-        this.authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+        this.authorities = admin
+                ? List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))
+                : Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
     }
 
     public static UserDetailsImpl build(User user) {
+        return build(user, false);
+    }
+
+    public static UserDetailsImpl build(User user, boolean admin) {
         return new UserDetailsImpl(
                 user.getId(),
                 user.getUsername(),
                 user.getEmail(),
-                user.getPassword());
+                user.getPassword(),
+                admin);
     }
 
     public Long getId() {
@@ -3,24 +3,35 @@ package com.filesharing.backend.security;
 import com.filesharing.backend.model.User;
 import com.filesharing.backend.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Set;
+
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
     
     @Autowired
     private UserRepository userRepository;
 
+    // Users allowed to call the admin actuator endpoints (integrity scrub)
+    @Value("${security.admin-usernames:}")
+    private Set<String> adminUsernames;
+
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User Not Found with username: " + username));
 
-        return UserDetailsImpl.build(user);
+        return build(user);
+    }
+
+    public UserDetailsImpl build(User user) {
+        return UserDetailsImpl.build(user, adminUsernames.contains(user.getUsername()));
     }
 } 
\ No newline at end of file
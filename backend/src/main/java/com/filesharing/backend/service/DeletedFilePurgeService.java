@@ -0,0 +1,6 @@
+package com.filesharing.backend.service;
+
+public interface DeletedFilePurgeService {
+    // Removes the stored bytes of files soft-deleted longer than the retention period, returns how many
+    int purgeDeletedFiles();
+}
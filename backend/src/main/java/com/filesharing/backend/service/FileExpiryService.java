@@ -0,0 +1,11 @@
+package com.filesharing.backend.service;
+
+import java.time.LocalDateTime;
+
+public interface FileExpiryService {
+    // Tells every node when the file expires, once the current transaction commits; null cancels
+    void schedule(Long fileId, LocalDateTime expiresAt);
+    
+    // Deletes files past their expiry that no timing wheel picked up, returns how many
+    int expireOverdueFiles();
+}
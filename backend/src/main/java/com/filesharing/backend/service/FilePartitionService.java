@@ -0,0 +1,9 @@
+package com.filesharing.backend.service;
+
+public interface FilePartitionService {
+    // Converts the files table into a partitioned table, returns false if it already is one
+    boolean migrate();
+    
+    // Creates upcoming tombstone partitions and detaches expired ones, returns how many were detached
+    int maintainPartitions();
+}
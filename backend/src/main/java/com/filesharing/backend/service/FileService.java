@@ -6,14 +6,27 @@ import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 public interface FileService {
     FileEntity saveFile(MultipartFile file, Long userId) throws IOException;
+    FileEntity saveFile(String originalFilename, String contentType, InputStream content, Long userId) throws IOException;
+    List<FileEntity> saveFiles(List<MultipartFile> files, Long userId) throws IOException;
+    List<FileEntity> importArchive(InputStream archive, Long userId) throws IOException;
     List<FileDto> getAllFilesByUser(Long userId);
     Resource loadFileAsResource(Long fileId, Long userId) throws IOException;
     void softDeleteFile(Long fileId, Long userId);
     Resource viewFileAsResource(Long fileId, Long userId) throws IOException;
     FileDto renameFile(Long fileId, String newFileName, Long userId);
-    Resource createBatchDownloadZip(List<Long> fileIds, Long userId) throws IOException;
+    FileDto setExpiry(Long fileId, Duration expiresIn, Long userId);
+    FileEntity copyFile(Long fileId, String newFileName, Long userId) throws IOException;
+    List<FileEntity> copyFiles(List<Long> fileIds, Long userId) throws IOException;
+    List<FileEntity> getBatchDownloadFiles(List<Long> fileIds, Long userId);
+    Optional<Resource> findCachedBatchDownloadZip(List<FileEntity> files);
+    void writeBatchDownloadZip(List<FileEntity> files, OutputStream outputStream) throws IOException;
+    void exportFilesAsNdjson(Long userId, OutputStream outputStream) throws IOException;
 } 
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.filesharing.backend.service;
+
+import com.filesharing.backend.dto.IntegrityReport;
+
+public interface IntegrityScrubService {
+    IntegrityReport runScrub();
+    boolean startScrub();
+    IntegrityReport getLastReport();
+}
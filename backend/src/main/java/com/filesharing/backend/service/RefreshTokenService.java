@@ -0,0 +1,18 @@
+package com.filesharing.backend.service;
+
+import com.filesharing.backend.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+public interface RefreshTokenService {
+    String createRefreshToken(User user);
+    RotatedToken rotateRefreshToken(String refreshToken);
+    void revokeRefreshToken(String refreshToken);
+
+    @Getter
+    @AllArgsConstructor
+    class RotatedToken {
+        private final User user;
+        private final String refreshToken;
+    }
+}
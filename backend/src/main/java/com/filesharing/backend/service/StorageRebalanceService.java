@@ -0,0 +1,6 @@
+package com.filesharing.backend.service;
+
+public interface StorageRebalanceService {
+    // Moves copies from the fullest to the emptiest volume, returns the number of files moved
+    int rebalance();
+}
@@ -0,0 +1,9 @@
+package com.filesharing.backend.service;
+
+public interface StorageTieringService {
+    // Moves files idle for longer than the configured period to the cold tier, returns how many
+    int demoteIdleFiles();
+
+    // Moves a cold file back to the hot volumes, false if it was not cold or could not be moved
+    boolean promote(Long fileId);
+}
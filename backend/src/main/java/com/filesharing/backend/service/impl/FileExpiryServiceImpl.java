@@ -0,0 +1,267 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.cache.InvalidationBus;
+import com.filesharing.backend.cache.InvalidationListener;
+import com.filesharing.backend.expiry.TimingWheel;
+import com.filesharing.backend.repository.FileRepository;
+import com.filesharing.backend.service.FileExpiryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Deletes files when their expiry passes without polling the files table. Every node keeps the
+// pending expiries in a timing wheel, loaded from the database at startup and kept current over the
+// invalidation bus. Due files are soft-deleted in batches whose rows are locked with SKIP LOCKED,
+// so nodes firing the same expiry never wait on or double-delete each other. Changed or removed
+// expiries are not taken out of the wheel; the delete re-checks expires_at. A periodic sweep catches
+// expiries no wheel held, e.g. while every node was down.
+@Service
+public class FileExpiryServiceImpl implements FileExpiryService {
+
+    private static final Logger logger = Logger.getLogger(FileExpiryServiceImpl.class.getName());
+
+    private static final String PENDING_SQL = "SELECT id, expires_at FROM files WHERE deleted = false AND expires_at > ?";
+
+    @Value("${file.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.expiry.tick:PT1S}")
+    private Duration tick;
+
+    @Value("${file.expiry.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.expiry.load-fetch-size:10000}")
+    private int loadFetchSize;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    // Files that were already due when scheduled, expired on the next tick
+    private final Queue<Long> overdue = new ConcurrentLinkedQueue<>();
+
+    // Guarded by its own monitor
+    private TimingWheel wheel;
+
+    private volatile boolean running = true;
+
+    private Thread ticker;
+
+    private Counter expiredFiles;
+
+    @PostConstruct
+    public void init() {
+        wheel = new TimingWheel(tick.toMillis(), System.currentTimeMillis());
+        expiredFiles = meterRegistry.counter("file.expiry.expired");
+        Gauge.builder("file.expiry.scheduled", this, FileExpiryServiceImpl::scheduledCount).register(meterRegistry);
+
+        invalidationBus.subscribe(InvalidationBus.FILE_EXPIRY, new InvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                int separator = key.indexOf(':');
+                if (enabled && separator > 0) {
+                    add(Long.parseLong(key.substring(0, separator)), Long.parseLong(key.substring(separator + 1)));
+                }
+            }
+
+            @Override
+            public void invalidateAll() {
+                // Missed expiries are still in the wheels of the nodes that set them, and in the sweep
+            }
+        });
+    }
+
+    // Loading can take a while with millions of pending expiries, so it runs on the ticker thread
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        ticker = new Thread(this::run, "file-expiry-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+            ticker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    @Override
+    public void schedule(Long fileId, LocalDateTime expiresAt) {
+        // Removing an expiry needs no message, the stale wheel entries find nothing to delete
+        if (expiresAt != null) {
+            long deadline = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            invalidationBus.publish(InvalidationBus.FILE_EXPIRY, fileId + ":" + deadline);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.expiry.sweep-interval:PT1H}", initialDelayString = "${file.expiry.sweep-initial-delay:PT2M}")
+    public void scheduledSweep() {
+        if (enabled) {
+            expireOverdueFiles();
+        }
+    }
+
+    @Override
+    public int expireOverdueFiles() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return 0;
+        }
+        int expired = 0;
+        try {
+            List<Long> batch;
+            do {
+                batch = transactionTemplate.execute(status -> {
+                    List<Long> ids = fileRepository.lockExpired(LocalDateTime.now(), batchSize);
+                    deleteLocked(ids);
+                    return ids;
+                });
+                expired += batch.size();
+            } while (batch.size() == batchSize && !Thread.currentThread().isInterrupted());
+        } finally {
+            sweeping.set(false);
+        }
+
+        if (expired > 0) {
+            expiredFiles.increment(expired);
+            logger.info("Swept " + expired + " expired files");
+        }
+        return expired;
+    }
+
+    private void run() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not load pending expiries, only the sweep deletes files that expire before a restart", e);
+        }
+
+        long tickMillis = tick.toMillis();
+        List<Long> due = new ArrayList<>();
+        while (running) {
+            long now = System.currentTimeMillis();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMillis - now % tickMillis));
+
+            synchronized (wheel) {
+                wheel.advance(System.currentTimeMillis(), due::add);
+            }
+            Long id;
+            while ((id = overdue.poll()) != null) {
+                due.add(id);
+            }
+            for (int from = 0; from < due.size(); from += batchSize) {
+                expire(due.subList(from, Math.min(due.size(), from + batchSize)));
+            }
+            due.clear();
+        }
+    }
+
+    // Streams pending expiries through a cursor; already due files are left to the sweep
+    private void load() {
+        long[] loaded = {0};
+        Timestamp now = Timestamp.from(Instant.now());
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(PENDING_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(loadFetchSize);
+                statement.setTimestamp(1, now);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                add(resultSet.getLong("id"), resultSet.getTimestamp("expires_at").getTime());
+                loaded[0]++;
+            });
+            return null;
+        });
+        logger.info("Loaded " + loaded[0] + " pending file expiries");
+    }
+
+    private void add(long fileId, long deadlineMillis) {
+        boolean scheduled;
+        synchronized (wheel) {
+            scheduled = wheel.add(fileId, deadlineMillis);
+        }
+        if (!scheduled) {
+            overdue.add(fileId);
+        }
+    }
+
+    // A failed batch is not retried here, the sweep picks its files up
+    private void expire(List<Long> fileIds) {
+        try {
+            Integer expired = transactionTemplate.execute(status -> {
+                List<Long> ids = fileRepository.lockExpired(fileIds, LocalDateTime.now());
+                deleteLocked(ids);
+                return ids.size();
+            });
+            if (expired != null && expired > 0) {
+                expiredFiles.increment(expired);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not expire " + fileIds.size() + " files, leaving them to the sweep", e);
+        }
+    }
+
+    private void deleteLocked(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        fileRepository.expire(ids, LocalDateTime.now());
+        for (Long id : ids) {
+            invalidationBus.publish(InvalidationBus.FILES, id.toString());
+        }
+    }
+
+    private int scheduledCount() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+}
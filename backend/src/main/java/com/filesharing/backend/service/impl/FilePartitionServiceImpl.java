@@ -0,0 +1,267 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.service.FilePartitionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.logging.Logger;
+
+// Splits the files table by state so listings stop scanning tombstones. Live rows are hash
+// partitioned by owner, so a user's listing touches one small partition; soft-deleted rows are
+// range partitioned by month of deletion, so old tombstones leave the table a month at a time:
+//
+//   files                  LIST (deleted)
+//     files_live           HASH (user_id), files_live_p0 .. files_live_pN
+//     files_deleted        RANGE (deleted_at), files_deleted_y2026m01 ..., files_deleted_default
+//
+// Deleting a file moves its row from the live to the tombstone side. A primary key on the parent
+// would have to contain every partition key, deleted_at included, which is null for live rows. So each
+// leaf partition gets its own PRIMARY KEY (id) instead: ids are enforced unique within a partition,
+// and across partitions only by coming from the one identity sequence (an INSERT with an explicit id
+// could duplicate one in another partition). Nothing can reference files(id) with a foreign key.
+// Lookups by id alone probe the key of every partition; queries that know the owner or the deleted
+// state should say so, so the planner can prune.
+@Service
+public class FilePartitionServiceImpl implements FilePartitionService {
+
+    private static final Logger logger = Logger.getLogger(FilePartitionServiceImpl.class.getName());
+
+    // The table as it was before the migration, kept until someone has checked the new one and drops it
+    private static final String LEGACY_TABLE = "files_pre_partitioning";
+
+    private static final Pattern TOMBSTONE_PARTITION = Pattern.compile("files_deleted_y(\\d{4})m(\\d{2})");
+
+    // Serializes migration and maintenance across nodes
+    private static final long ADVISORY_LOCK_KEY = 0x66696c6573L;
+
+    @Value("${file.partitioning.enabled:true}")
+    private boolean enabled;
+
+    // Run the migration when the application starts; it locks the files table while rows are copied
+    @Value("${file.partitioning.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    // Only read by the migration, changing it later takes another migration
+    @Value("${file.partitioning.live-partitions:16}")
+    private int livePartitions;
+
+    // Tombstone partitions are created this many months ahead, so deletions never land in the default partition
+    @Value("${file.partitioning.premake-months:2}")
+    private int premakeMonths;
+
+    // Must exceed file.purge.retention: partitions still holding unpurged bytes are never detached
+    @Value("${file.partitioning.detach-after:P180D}")
+    private Duration detachAfter;
+
+    // Detached partitions stay as standalone tables for archiving unless they are dropped
+    @Value("${file.partitioning.drop-detached:false}")
+    private boolean dropDetached;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter detachedPartitions;
+
+    @PostConstruct
+    public void init() {
+        detachedPartitions = meterRegistry.counter("file.partitions.detached");
+    }
+
+    // After startup, when Hibernate has created or updated the table
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup) {
+            migrate();
+            maintainPartitions();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.partitioning.interval:PT6H}", initialDelayString = "${file.partitioning.initial-delay:PT5M}")
+    public void scheduledMaintenance() {
+        if (enabled) {
+            maintainPartitions();
+        }
+    }
+
+    @Override
+    public boolean migrate() {
+        Boolean migrated = transactionTemplate.execute(status -> {
+            if (!tryLock() || isPartitioned()) {
+                return false;
+            }
+            jdbcTemplate.execute("LOCK TABLE files IN ACCESS EXCLUSIVE MODE");
+
+            // Foreign keys are re-created under their old names, so Hibernate's schema update finds them
+            List<String> foreignKeys = jdbcTemplate.query(
+                    "SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint WHERE conrelid = 'files'::regclass AND contype = 'f'",
+                    (rs, rowNum) -> "ALTER TABLE files ADD CONSTRAINT \"" + rs.getString(1) + "\" " + rs.getString(2));
+            String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence('files', 'id')", String.class);
+
+            jdbcTemplate.execute("ALTER TABLE files RENAME TO " + LEGACY_TABLE);
+            jdbcTemplate.execute("CREATE TABLE files (LIKE " + LEGACY_TABLE + " INCLUDING DEFAULTS INCLUDING IDENTITY) "
+                    + "PARTITION BY LIST (deleted)");
+            // A serial column's default still points at the old sequence, which must move along
+            if (sequence != null && jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence('files', 'id')", String.class) == null) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY files.id");
+            }
+
+            jdbcTemplate.execute("CREATE TABLE files_live PARTITION OF files FOR VALUES IN (false) PARTITION BY HASH (user_id)");
+            for (int i = 0; i < livePartitions; i++) {
+                jdbcTemplate.execute("CREATE TABLE files_live_p" + i + " PARTITION OF files_live "
+                        + "FOR VALUES WITH (MODULUS " + livePartitions + ", REMAINDER " + i + ")");
+            }
+            jdbcTemplate.execute("CREATE TABLE files_deleted PARTITION OF files FOR VALUES IN (true) PARTITION BY RANGE (deleted_at)");
+            // Tombstones without a deletion time, from before deletedAt was recorded
+            jdbcTemplate.execute("CREATE TABLE files_deleted_default PARTITION OF files_deleted DEFAULT");
+            LocalDateTime oldest = jdbcTemplate.queryForObject(
+                    "SELECT min(deleted_at) FROM " + LEGACY_TABLE + " WHERE deleted", LocalDateTime.class);
+            YearMonth month = oldest != null ? YearMonth.from(oldest) : YearMonth.now();
+            for (; !month.isAfter(YearMonth.now().plusMonths(premakeMonths)); month = month.plusMonths(1)) {
+                createTombstonePartition(month);
+            }
+
+            int rows = jdbcTemplate.update("INSERT INTO files OVERRIDING SYSTEM VALUE SELECT * FROM " + LEGACY_TABLE);
+            // Live rows are the bulk of the copy, so their keys are built afterwards instead of row by
+            // row; tombstone months already got theirs in createTombstonePartition
+            for (int i = 0; i < livePartitions; i++) {
+                addPrimaryKey("files_live_p" + i);
+            }
+            addPrimaryKey("files_deleted_default");
+            // Indexes on a partitioned table are created on every partition, including ones attached later
+            jdbcTemplate.execute("CREATE INDEX files_live_user_id_idx ON files_live (user_id)");
+            // Blob reference counts and moves look files up by location, on both sides
+            jdbcTemplate.execute("CREATE INDEX idx_files_file_path ON files (file_path)");
+            jdbcTemplate.execute("CREATE INDEX idx_files_replica_path ON files (replica_path)");
+            jdbcTemplate.execute("CREATE INDEX idx_files_expires_at ON files (expires_at)");
+            foreignKeys.forEach(jdbcTemplate::execute);
+            jdbcTemplate.queryForObject("SELECT setval(pg_get_serial_sequence('files', 'id'), "
+                    + "COALESCE((SELECT max(id) FROM files), 0) + 1, false)", Long.class);
+            jdbcTemplate.execute("ANALYZE files");
+
+            logger.info("Partitioned the files table (" + rows + " rows); the old table remains as " + LEGACY_TABLE);
+            return true;
+        });
+        return Boolean.TRUE.equals(migrated);
+    }
+
+    @Override
+    public int maintainPartitions() {
+        Integer detached = transactionTemplate.execute(status -> {
+            if (!tryLock() || !isPartitioned()) {
+                return 0;
+            }
+            Map<YearMonth, String> partitions = tombstonePartitions();
+            YearMonth current = YearMonth.now();
+            for (int i = 0; i <= premakeMonths; i++) {
+                if (!partitions.containsKey(current.plusMonths(i))) {
+                    createTombstonePartition(current.plusMonths(i));
+                }
+            }
+
+            int count = 0;
+            LocalDateTime cutoff = LocalDateTime.now().minus(detachAfter);
+            for (Map.Entry<YearMonth, String> partition : partitions.entrySet()) {
+                if (partition.getKey().plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)) {
+                    break;
+                }
+                if (detach(partition.getValue())) {
+                    count++;
+                }
+            }
+            return count;
+        });
+
+        int count = detached != null ? detached : 0;
+        if (count > 0) {
+            detachedPartitions.increment(count);
+        }
+        return count;
+    }
+
+    // Built detached and attached afterwards, so tombstones that went to the default partition while
+    // the month had no partition yet can be moved over
+    private void createTombstonePartition(YearMonth month) {
+        String name = String.format("files_deleted_y%04dm%02d", month.getYear(), month.getMonthValue());
+        String from = month.atDay(1).toString();
+        String to = month.plusMonths(1).atDay(1).toString();
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE files INCLUDING DEFAULTS, PRIMARY KEY (id))");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM files_deleted_default "
+                + "WHERE deleted_at >= '" + from + "' AND deleted_at < '" + to + "' RETURNING *) "
+                + "INSERT INTO " + name + " SELECT * FROM moved");
+        jdbcTemplate.execute("ALTER TABLE files_deleted ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        if (moved > 0) {
+            logger.info("Moved " + moved + " tombstones from the default partition to " + name);
+        }
+    }
+
+    private void addPrimaryKey(String partition) {
+        jdbcTemplate.execute("ALTER TABLE " + partition + " ADD PRIMARY KEY (id)");
+    }
+
+    // Rows whose bytes still await the purge job keep the partition attached
+    private boolean detach(String partition) {
+        Boolean unpurged = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE NOT blob_purged)", Boolean.class);
+        if (Boolean.TRUE.equals(unpurged)) {
+            logger.warning("Not detaching " + partition + ", some of its files still have stored bytes");
+            return false;
+        }
+        jdbcTemplate.execute("ALTER TABLE files_deleted DETACH PARTITION " + partition);
+        if (dropDetached) {
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            logger.info("Dropped tombstone partition " + partition);
+        } else {
+            logger.info("Detached tombstone partition " + partition + ", it can be archived and dropped");
+        }
+        return true;
+    }
+
+    // Monthly tombstone partitions, oldest first
+    private Map<YearMonth, String> tombstonePartitions() {
+        Map<YearMonth, String> partitions = new TreeMap<>();
+        jdbcTemplate.query("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = 'files_deleted'::regclass", rs -> {
+            Matcher matcher = TOMBSTONE_PARTITION.matcher(rs.getString(1));
+            if (matcher.matches()) {
+                partitions.put(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))),
+                        matcher.group());
+            }
+        });
+        return partitions;
+    }
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass('files') AND relkind = 'p')", Boolean.class));
+    }
+
+    // Held until the transaction ends; another node already running simply skips this round
+    private boolean tryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY));
+    }
+}
@@ -1,81 +1,186 @@
 package com.filesharing.backend.service.impl;
 
+import com.filesharing.backend.archive.ArchiveEntry;
+import com.filesharing.backend.archive.ArchiveUnpacker;
+import com.filesharing.backend.archive.ParallelZipWriter;
+import com.filesharing.backend.audit.AccessLog;
+import com.filesharing.backend.cache.ArchiveCache;
+import com.filesharing.backend.cache.HotFileCache;
+import com.filesharing.backend.cache.InvalidationBus;
 import com.filesharing.backend.dto.FileDto;
+import com.filesharing.backend.exception.InvalidArchiveException;
+import com.filesharing.backend.exception.InvalidExpiryException;
 import com.filesharing.backend.exception.ResourceNotFoundException;
+import com.filesharing.backend.model.AccessType;
 import com.filesharing.backend.model.FileEntity;
 import com.filesharing.backend.model.User;
 import com.filesharing.backend.repository.FileRepository;
+import com.filesharing.backend.service.FileExpiryService;
 import com.filesharing.backend.service.FileService;
 import com.filesharing.backend.service.UserService;
+import com.filesharing.backend.storage.FileStorage;
+import com.filesharing.backend.storage.IngestExecutor;
+import com.filesharing.backend.storage.IoClass;
+import com.filesharing.backend.storage.IoScheduler;
+import com.filesharing.backend.storage.StoredFile;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Service
 public class FileServiceImpl implements FileService {
 
-    @Value("${file.upload-dir}")
-    private String uploadDir;
+    private static final String EXPORT_SQL = "SELECT id, file_name, file_type, file_size, upload_date, deleted, deleted_at, checksum "
+            + "FROM files WHERE user_id = ? ORDER BY id";
 
     @Autowired
     private FileRepository fileRepository;
 
+    @Autowired
+    private FileStorage fileStorage;
+
+    @Autowired
+    private IoScheduler ioScheduler;
+
+    @Autowired
+    private ParallelZipWriter parallelZipWriter;
+
+    @Autowired
+    private ArchiveCache archiveCache;
+
+    @Autowired
+    private HotFileCache hotFileCache;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private FileExpiryService fileExpiryService;
+
+    @Autowired
+    private AccessLog accessLog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${file.export.fetch-size:500}")
+    private int exportFetchSize;
+
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private IngestExecutor ingestExecutor;
+
+    @Value("${file.import.max-entries:10000}")
+    private int importMaxEntries;
+
+    @Value("${file.import.inline-threshold:1MB}")
+    private DataSize importInlineThreshold;
+
+    // Copies share the source's stored bytes; off, every copy writes the bytes again
+    @Value("${file.copy.share-blobs:true}")
+    private boolean copyShareBlobs;
+
+    @Value("${file.expiry.max-ttl:P3650D}")
+    private Duration maxExpiry;
+
     @Override
-    @Transactional
     public FileEntity saveFile(MultipartFile file, Long userId) throws IOException {
-        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-        
-        // Generate a unique filename
-        String uniqueFilename = UUID.randomUUID().toString() + "_" + originalFilename;
+        try (InputStream inputStream = file.getInputStream()) {
+            return saveFile(file.getOriginalFilename(), file.getContentType(), inputStream, userId);
+        }
+    }
+
+    @Override
+    public FileEntity saveFile(String originalFilename, String contentType, InputStream content, Long userId) throws IOException {
+        User owner = userService.getUserById(userId);
         
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+        // Save the file to the upload directory, then its metadata to the database.
+        // The content may still be arriving from the client, so no transaction is open while it is copied.
+        FileEntity file = storeFile(originalFilename, contentType, content, owner);
+        try {
+            return fileRepository.save(file);
+        } catch (RuntimeException e) {
+            fileStorage.delete(file);
+            throw e;
         }
+    }
+
+    @Override
+    @Transactional
+    public List<FileEntity> saveFiles(List<MultipartFile> files, Long userId) throws IOException {
+        User owner = userService.getUserById(userId);
         
-        // Save the file to the upload directory
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        // Parts are already spooled by the servlet container, so all of them can be stored at once
+        List<Future<FileEntity>> pending = new ArrayList<>();
+        for (MultipartFile file : files) {
+            pending.add(ingestExecutor.submit(() -> {
+                try (InputStream inputStream = file.getInputStream()) {
+                    return storeFile(file.getOriginalFilename(), file.getContentType(), inputStream, owner);
+                }
+            }));
+        }
         
-        // Save file metadata to database
+        return insertStoredFiles(pending);
+    }
+
+    @Override
+    @Transactional
+    public List<FileEntity> importArchive(InputStream archive, Long userId) throws IOException {
         User owner = userService.getUserById(userId);
+        List<Future<FileEntity>> pending = new ArrayList<>();
         
-        FileEntity fileEntity = FileEntity.builder()
-                .fileName(originalFilename)
-                .fileType(file.getContentType())
-                .fileSize(file.getSize())
-                .filePath(filePath.toString())
-                .uploadDate(LocalDateTime.now())
-                .deleted(false)
-                .owner(owner)
-                .build();
+        try {
+            ArchiveUnpacker.unpack(archive, importMaxEntries,
+                    (path, size, content) -> pending.add(ingestArchiveEntry(path, size, content, owner)));
+        } catch (IOException | RuntimeException e) {
+            discardStoredFiles(pending);
+            throw e;
+        }
         
-        return fileRepository.save(fileEntity);
+        if (pending.isEmpty()) {
+            throw new InvalidArchiveException("Archive does not contain any files");
+        }
+        return insertStoredFiles(pending);
     }
 
     @Override
@@ -93,6 +198,9 @@ public class FileServiceImpl implements FileService {
                         .uploadDate(file.getUploadDate())
                         .deleted(file.isDeleted())
                         .deletedAt(file.getDeletedAt())
+                        .expiresAt(file.getExpiresAt())
+                        .downloadCount(file.getDownloadCount())
+                        .viewCount(file.getViewCount())
                         .build())
                 .collect(Collectors.toList());
     }
@@ -104,18 +212,9 @@ public class FileServiceImpl implements FileService {
         FileEntity file = fileRepository.findByIdAndOwnerAndDeletedFalse(fileId, owner)
                 .orElseThrow(() -> new ResourceNotFoundException("File not found with id: " + fileId));
         
-        try {
-            Path filePath = Paths.get(file.getFilePath());
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new ResourceNotFoundException("File not found: " + file.getFileName());
-            }
-        } catch (MalformedURLException ex) {
-            throw new ResourceNotFoundException("File not found: " + file.getFileName());
-        }
+        Resource resource = fileStorage.load(file, ioScheduler.classOf(file.getFileSize()));
+        accessLog.record(fileId, userId, AccessType.DOWNLOAD);
+        return resource;
     }
 
     @Override
@@ -127,28 +226,20 @@ public class FileServiceImpl implements FileService {
         
         // Mark file as deleted in database using soft delete
         fileRepository.softDeleteByIdAndOwner(fileId, owner, LocalDateTime.now());
+        invalidationBus.publish(InvalidationBus.FILES, fileId.toString());
     }
     
     @Override
     @Transactional(readOnly = true)
     public Resource viewFileAsResource(Long fileId, Long userId) throws IOException {
-        // Similar to loadFileAsResource but could be optimized for viewing in browser
+        // Similar to loadFileAsResource, but small popular files are served from the off-heap cache
         User owner = userService.getUserById(userId);
         FileEntity file = fileRepository.findByIdAndOwnerAndDeletedFalse(fileId, owner)
                 .orElseThrow(() -> new ResourceNotFoundException("File not found with id: " + fileId));
         
-        try {
-            Path filePath = Paths.get(file.getFilePath());
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new ResourceNotFoundException("File not found: " + file.getFileName());
-            }
-        } catch (MalformedURLException ex) {
-            throw new ResourceNotFoundException("File not found: " + file.getFileName());
-        }
+        Resource resource = hotFileCache.get(file, () -> fileStorage.load(file, ioScheduler.classOf(file.getFileSize())));
+        accessLog.record(fileId, userId, AccessType.VIEW);
+        return resource;
     }
     
     @Override
@@ -177,6 +268,7 @@ public class FileServiceImpl implements FileService {
         // Update file name
         file.setFileName(cleanedFileName);
         file = fileRepository.save(file);
+        invalidationBus.publish(InvalidationBus.FILES, fileId.toString());
         
         // Return updated FileDto
         return FileDto.builder()
@@ -187,44 +279,318 @@ public class FileServiceImpl implements FileService {
                 .uploadDate(file.getUploadDate())
                 .deleted(file.isDeleted())
                 .deletedAt(file.getDeletedAt())
+                .expiresAt(file.getExpiresAt())
+                .downloadCount(file.getDownloadCount())
+                .viewCount(file.getViewCount())
                 .build();
     }
     
+    @Override
+    @Transactional
+    public FileDto setExpiry(Long fileId, Duration expiresIn, Long userId) {
+        if (expiresIn != null && (expiresIn.isNegative() || expiresIn.isZero() || expiresIn.compareTo(maxExpiry) > 0)) {
+            throw new InvalidExpiryException("Expiry must be in the future and at most " + maxExpiry.toDays() + " days away");
+        }
+        
+        User owner = userService.getUserById(userId);
+        FileEntity file = fileRepository.findByIdAndOwnerAndDeletedFalse(fileId, owner)
+                .orElseThrow(() -> new ResourceNotFoundException("File not found with id: " + fileId));
+        
+        LocalDateTime expiresAt = expiresIn != null ? LocalDateTime.now().plus(expiresIn) : null;
+        fileRepository.updateExpiresAt(fileId, owner, expiresAt);
+        fileExpiryService.schedule(fileId, expiresAt);
+        
+        return FileDto.builder()
+                .id(file.getId())
+                .fileName(file.getFileName())
+                .fileType(file.getFileType())
+                .fileSize(file.getFileSize())
+                .uploadDate(file.getUploadDate())
+                .expiresAt(expiresAt)
+                .downloadCount(file.getDownloadCount())
+                .viewCount(file.getViewCount())
+                .build();
+    }
+    
+    @Override
+    public FileEntity copyFile(Long fileId, String newFileName, Long userId) throws IOException {
+        User owner = userService.getUserById(userId);
+        FileEntity source = fileRepository.findByIdAndOwnerAndDeletedFalse(fileId, owner)
+                .orElseThrow(() -> new ResourceNotFoundException("File not found with id: " + fileId));
+        
+        String fileName = StringUtils.hasText(newFileName) ? StringUtils.cleanPath(newFileName.trim()) : source.getFileName();
+        return insertCopies(List.of(copyOf(source, fileName, owner))).get(0);
+    }
+    
+    @Override
+    public List<FileEntity> copyFiles(List<Long> fileIds, Long userId) throws IOException {
+        User owner = userService.getUserById(userId);
+        List<FileEntity> sources = fileRepository.findByIdInAndOwnerAndDeletedFalse(fileIds, owner).stream()
+                .sorted(Comparator.comparing(FileEntity::getId))
+                .collect(Collectors.toList());
+        if (sources.isEmpty()) {
+            throw new ResourceNotFoundException("No files found or you don't have permission to access them");
+        }
+        
+        List<FileEntity> copies = new ArrayList<>(sources.size());
+        try {
+            for (FileEntity source : sources) {
+                copies.add(copyOf(source, source.getFileName(), owner));
+            }
+        } catch (IOException | RuntimeException e) {
+            discardCopies(copies);
+            throw e;
+        }
+        return insertCopies(copies);
+    }
+    
     @Override
     @Transactional(readOnly = true)
-    public Resource createBatchDownloadZip(List<Long> fileIds, Long userId) throws IOException {
+    public List<FileEntity> getBatchDownloadFiles(List<Long> fileIds, Long userId) {
         User owner = userService.getUserById(userId);
         
         // Get all files that belong to the user
-        List<FileEntity> files = fileRepository.findAllById(fileIds).stream()
-                .filter(file -> file.getOwner().getId().equals(userId) && !file.isDeleted())
-                .collect(Collectors.toList());
+        List<FileEntity> files = fileRepository.findByIdInAndOwnerAndDeletedFalse(fileIds, owner);
         
         // If no files found or don't belong to user, throw exception
         if (files.isEmpty()) {
             throw new ResourceNotFoundException("No files found or you don't have permission to access them");
         }
         
-        // Create a ZIP archive in memory
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
-            for (FileEntity file : files) {
-                // Get the file content
-                Path filePath = Paths.get(file.getFilePath());
-                byte[] fileData = Files.readAllBytes(filePath);
-                
-                // Add file to ZIP
-                ZipEntry entry = new ZipEntry(file.getFileName());
-                entry.setSize(fileData.length);
-                zos.putNextEntry(entry);
-                zos.write(fileData);
-                zos.closeEntry();
+        files.forEach(file -> accessLog.record(file.getId(), userId, AccessType.DOWNLOAD));
+        return files;
+    }
+    
+    @Override
+    public Optional<Resource> findCachedBatchDownloadZip(List<FileEntity> files) {
+        return archiveCache.lookup(files).map(FileSystemResource::new);
+    }
+    
+    @Override
+    public void writeBatchDownloadZip(List<FileEntity> files, OutputStream outputStream) throws IOException {
+        // Entries are compressed in parallel but streamed to the client in order.
+        // Id order keeps the archive identical for the same file set, so it can be cached.
+        List<ArchiveEntry> entries = files.stream()
+                .sorted(Comparator.comparing(FileEntity::getId))
+                .map(file -> new ArchiveEntry(file.getFileName(), () -> fileStorage.openStream(file, IoClass.BULK)))
+                .collect(Collectors.toList());
+        
+        archiveCache.writeThrough(files, outputStream, target -> parallelZipWriter.write(entries, target));
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void exportFilesAsNdjson(Long userId, OutputStream outputStream) throws IOException {
+        // Rows are read through a server-side cursor and written as they arrive,
+        // so memory use does not depend on how many files the user has
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // One object per line: newline terminated, no separator between root values
+            generator.setRootValueSeparator(null);
+            long[] rowCount = {0};
+            
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(exportFetchSize);
+                statement.setLong(1, userId);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                try {
+                    writeExportRow(generator, resultSet);
+                    // Flush after the first row, so the client starts receiving bytes immediately,
+                    // and then after every fetched batch
+                    long rows = ++rowCount[0];
+                    if (rows == 1 || rows % exportFetchSize == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            
+            generator.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private void writeExportRow(JsonGenerator generator, ResultSet resultSet) throws SQLException, IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", resultSet.getLong("id"));
+        generator.writeStringField("fileName", resultSet.getString("file_name"));
+        generator.writeStringField("fileType", resultSet.getString("file_type"));
+        generator.writeNumberField("fileSize", resultSet.getLong("file_size"));
+        generator.writeStringField("uploadDate", toIsoString(resultSet.getTimestamp("upload_date")));
+        generator.writeBooleanField("deleted", resultSet.getBoolean("deleted"));
+        generator.writeStringField("deletedAt", toIsoString(resultSet.getTimestamp("deleted_at")));
+        generator.writeStringField("checksum", resultSet.getString("checksum"));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+    
+    private FileEntity storeFile(String originalFilename, String contentType, InputStream content, User owner) throws IOException {
+        String cleanedFilename = StringUtils.cleanPath(originalFilename);
+        StoredFile storedFile = fileStorage.store(content, cleanedFilename);
+        
+        return FileEntity.builder()
+                .fileName(cleanedFilename)
+                .fileType(resolveContentType(contentType, storedFile.getDetectedType()))
+                .fileSize(storedFile.getFileSize())
+                .filePath(storedFile.getFilePath())
+                .replicaPath(storedFile.getReplicaPath())
+                .checksum(storedFile.getChecksum())
+                .uploadDate(LocalDateTime.now())
+                .deleted(false)
+                .owner(owner)
+                .build();
+    }
+    
+    // A copy is a new row pointing at the source's stored bytes, so it takes the same time however
+    // large the file is. Stored copies are only removed once no file refers to them any more.
+    // With file.copy.share-blobs=false the bytes are copied instead, which is why copies run
+    // outside a transaction, like uploads.
+    private FileEntity copyOf(FileEntity source, String fileName, User owner) throws IOException {
+        FileEntity.FileEntityBuilder copy = FileEntity.builder()
+                .fileName(fileName)
+                .fileType(source.getFileType())
+                .fileSize(source.getFileSize())
+                .checksum(source.getChecksum())
+                .uploadDate(LocalDateTime.now())
+                .deleted(false)
+                .owner(owner);
+        if (copyShareBlobs) {
+            return copy.filePath(source.getFilePath())
+                    .replicaPath(source.getReplicaPath())
+                    .build();
+        }
+        
+        StoredFile storedFile;
+        try (InputStream content = fileStorage.openStream(source, IoClass.BULK)) {
+            storedFile = fileStorage.store(content, fileName);
+        }
+        return copy.filePath(storedFile.getFilePath())
+                .replicaPath(storedFile.getReplicaPath())
+                .build();
+    }
+    
+    private List<FileEntity> insertCopies(List<FileEntity> copies) {
+        try {
+            return fileRepository.insertAll(copies);
+        } catch (RuntimeException e) {
+            discardCopies(copies);
+            throw e;
+        }
+    }
+    
+    // Only copies that wrote bytes of their own have anything to remove
+    private void discardCopies(List<FileEntity> copies) {
+        if (copyShareBlobs) {
+            return;
+        }
+        for (FileEntity copy : copies) {
+            try {
+                fileStorage.delete(copy);
+            } catch (IOException e) {
+                // Whatever is left behind is picked up by the orphan reconciler
             }
         }
+    }
+    
+    // The declared type wins unless it is missing or generic, then the sniffed one is used
+    private static String resolveContentType(String declaredType, String detectedType) {
+        if (StringUtils.hasText(declaredType) && !MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(declaredType)) {
+            return declaredType;
+        }
+        return detectedType != null ? detectedType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+    
+    // The archive can only be read front to back, so small entries are copied into memory and
+    // stored by a worker while the next entry is read; large ones stream to storage on this thread
+    private Future<FileEntity> ingestArchiveEntry(String path, long size, InputStream content, User owner) throws IOException {
+        String contentType = URLConnection.guessContentTypeFromName(path);
+        int inlineThreshold = (int) Math.min(importInlineThreshold.toBytes(), ingestExecutor.getBufferLimit() - 1);
+        if (size > inlineThreshold) {
+            return CompletableFuture.completedFuture(storeFile(path, contentType, content, owner));
+        }
         
-        // Return ZIP as a ByteArrayResource
-        ByteArrayResource resource = new ByteArrayResource(baos.toByteArray());
-        return resource;
+        // Sizes in zip data descriptors are unknown up front, so read one byte past the threshold to tell
+        int reserved = inlineThreshold + 1;
+        try {
+            ingestExecutor.acquireBuffer(reserved);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for import buffer space");
+        }
+        byte[] head;
+        try {
+            head = content.readNBytes(reserved);
+        } catch (IOException | RuntimeException e) {
+            ingestExecutor.releaseBuffer(reserved);
+            throw e;
+        }
+        ingestExecutor.releaseBuffer(reserved - head.length);
+        
+        if (head.length > inlineThreshold) {
+            ingestExecutor.releaseBuffer(head.length);
+            InputStream fullContent = new SequenceInputStream(new ByteArrayInputStream(head), content);
+            return CompletableFuture.completedFuture(storeFile(path, contentType, fullContent, owner));
+        }
+        
+        return ingestExecutor.submit(() -> {
+            try {
+                return storeFile(path, contentType, new ByteArrayInputStream(head), owner);
+            } finally {
+                ingestExecutor.releaseBuffer(head.length);
+            }
+        });
+    }
+    
+    // Waits for every file to be stored, then inserts all rows in JDBC batches.
+    // If anything fails, the bytes already written are removed again.
+    private List<FileEntity> insertStoredFiles(List<Future<FileEntity>> pending) throws IOException {
+        List<FileEntity> storedFiles = new ArrayList<>(pending.size());
+        try {
+            for (Future<FileEntity> future : pending) {
+                storedFiles.add(future.get());
+            }
+            return fileRepository.insertAll(storedFiles);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discardStoredFiles(pending);
+            throw new InterruptedIOException("Interrupted while storing files");
+        } catch (ExecutionException e) {
+            discardStoredFiles(pending);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to store file", cause);
+        } catch (RuntimeException e) {
+            discardStoredFiles(pending);
+            throw e;
+        }
+    }
+    
+    private void discardStoredFiles(List<Future<FileEntity>> pending) {
+        for (Future<FileEntity> future : pending) {
+            try {
+                fileStorage.delete(future.get());
+            } catch (InterruptedException e) {
+                // Whatever is left behind is picked up by the orphan reconciler
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | IOException e) {
+                // Nothing was stored for this file, or it is already gone
+            }
+        }
+    }
+    
+    private String toIsoString(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime().toString() : null;
     }
     
     // Helper method to extract file extension
@@ -0,0 +1,396 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.dto.IntegrityReport;
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.repository.FileRepository;
+import com.filesharing.backend.service.IntegrityScrubService;
+import com.filesharing.backend.storage.ByteRateLimiter;
+import com.filesharing.backend.storage.FileStorage;
+import com.filesharing.backend.storage.PackStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Re-verifies stored checksums in the background and reconciles the upload directory against the files table.
+// Progress is checkpointed after every batch so an interrupted pass resumes where it stopped.
+@Service
+public class IntegrityScrubServiceImpl implements IntegrityScrubService {
+
+    private static final Logger logger = Logger.getLogger(IntegrityScrubServiceImpl.class.getName());
+
+    private static final String CHECKPOINT_FILE = ".scrub-checkpoint";
+
+    // Cap on ids and paths kept in a single report
+    private static final int MAX_REPORTED_ITEMS = 1000;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${file.scrub.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.scrub.parallelism:2}")
+    private int parallelism;
+
+    @Value("${file.scrub.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.scrub.max-bytes-per-second:20MB}")
+    private DataSize maxBytesPerSecond;
+
+    @Value("${file.scrub.max-run-duration:PT30M}")
+    private Duration maxRunDuration;
+
+    @Value("${file.scrub.orphan-grace-period:PT1H}")
+    private Duration orphanGracePeriod;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorage fileStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final AtomicLong verifiedGauge = new AtomicLong();
+    private final AtomicLong corruptGauge = new AtomicLong();
+    private final AtomicLong missingGauge = new AtomicLong();
+    private final AtomicLong orphanGauge = new AtomicLong();
+
+    private ExecutorService executor;
+
+    private ByteRateLimiter rateLimiter;
+
+    private volatile IntegrityReport lastReport;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "integrity-scrubber");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        rateLimiter = new ByteRateLimiter(maxBytesPerSecond.toBytes());
+
+        meterRegistry.gauge("integrity.scrub.verified", verifiedGauge);
+        meterRegistry.gauge("integrity.scrub.corrupt", corruptGauge);
+        meterRegistry.gauge("integrity.scrub.missing", missingGauge);
+        meterRegistry.gauge("integrity.scrub.orphans", orphanGauge);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${file.scrub.interval:PT1H}", initialDelayString = "${file.scrub.initial-delay:PT5M}")
+    public void scheduledScrub() {
+        if (enabled) {
+            runScrub();
+        }
+    }
+
+    @Override
+    public IntegrityReport runScrub() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Integrity scrub already in progress, skipping");
+            return lastReport;
+        }
+
+        return scrubAndPublish();
+    }
+
+    // Runs a scrub on its own thread; false if one is already in progress
+    @Override
+    public boolean startScrub() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                scrubAndPublish();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Integrity scrub failed", e);
+            }
+        }, "integrity-scrub-manual");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return true;
+    }
+
+    private IntegrityReport scrubAndPublish() {
+        try {
+            IntegrityReport report = scrub();
+            lastReport = report;
+            publish(report);
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public IntegrityReport getLastReport() {
+        return lastReport;
+    }
+
+    private IntegrityReport scrub() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        Instant deadline = Instant.now().plus(maxRunDuration);
+        long resumedFromId = readCheckpoint();
+        long checkpoint = resumedFromId;
+
+        ScrubTally tally = new ScrubTally();
+        boolean passCompleted = false;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<FileEntity> batch = fileRepository.findByIdGreaterThanOrderByIdAsc(checkpoint, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                passCompleted = true;
+                checkpoint = 0L;
+                writeCheckpoint(checkpoint);
+                break;
+            }
+
+            verifyBatch(batch, tally);
+            checkpoint = batch.get(batch.size() - 1).getId();
+            writeCheckpoint(checkpoint);
+
+            if (Instant.now().isAfter(deadline)) {
+                break;
+            }
+        }
+
+        // The directory walk is only meaningful once every row has been seen
+        List<String> orphans = passCompleted ? findOrphans() : Collections.emptyList();
+
+        return IntegrityReport.builder()
+                .startedAt(startedAt)
+                .finishedAt(LocalDateTime.now())
+                .resumedFromId(resumedFromId)
+                .checkpointId(checkpoint)
+                .passCompleted(passCompleted)
+                .filesVerified(tally.verified.get())
+                .bytesVerified(tally.bytes.get())
+                .checksumsBackfilled(tally.backfilled.get())
+                .corruptFileIds(new ArrayList<>(tally.corrupt))
+                .missingFileIds(new ArrayList<>(tally.missing))
+                .orphanPaths(orphans)
+                .build();
+    }
+
+    private void verifyBatch(List<FileEntity> batch, ScrubTally tally) {
+        List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+        for (FileEntity file : batch) {
+            tasks.add(() -> {
+                verify(file, tally);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "Integrity check failed", e.getCause());
+        }
+    }
+
+    // Every replica is read, a bad copy would otherwise go unnoticed until the good one is lost
+    private void verify(FileEntity file, ScrubTally tally) throws InterruptedException {
+        if (file.isBlobPurged()) {
+            return;
+        }
+        List<String> locations = FileStorage.locationsOf(file);
+        List<String> checksums = new ArrayList<>(2);
+        for (String copy : locations) {
+            try (InputStream inputStream = fileStorage.openCopy(copy)) {
+                checksums.add(hash(inputStream, tally));
+            } catch (IOException e) {
+                logger.warning("Could not read copy of file " + file.getId() + " at " + copy + ": " + e.getMessage());
+                addCapped(tally.missing, file.getId());
+                return;
+            }
+        }
+
+        tally.verified.incrementAndGet();
+        String expected = file.getChecksum();
+        if (expected == null) {
+            // Uploaded before checksums were recorded
+            expected = checksums.get(0);
+            fileRepository.updateChecksum(file.getId(), expected);
+            tally.backfilled.incrementAndGet();
+        }
+        for (int i = 0; i < checksums.size(); i++) {
+            if (!expected.equals(checksums.get(i))) {
+                logger.warning("Checksum mismatch for file " + file.getId() + " at " + locations.get(i));
+                addCapped(tally.corrupt, file.getId());
+                return;
+            }
+        }
+    }
+
+    private String hash(InputStream inputStream, ScrubTally tally) throws IOException, InterruptedException {
+        MessageDigest digest = FileStorage.newDigest();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            rateLimiter.acquire(read);
+            digest.update(buffer, 0, read);
+            tally.bytes.addAndGet(read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private List<String> findOrphans() {
+        Set<Path> knownPaths = new HashSet<>();
+        for (String filePath : fileRepository.findAllFilePaths()) {
+            if (PackStore.isPacked(filePath)) {
+                continue;
+            }
+            knownPaths.add(Paths.get(filePath).toAbsolutePath().normalize());
+        }
+        for (String replicaPath : fileRepository.findAllReplicaPaths()) {
+            knownPaths.add(Paths.get(replicaPath).toAbsolutePath().normalize());
+        }
+
+        // Files younger than the grace period may belong to uploads that have not committed yet
+        Instant cutoff = Instant.now().minus(orphanGracePeriod);
+        List<Path> roots = new ArrayList<>(fileStorage.getVolumeRoots());
+        if (roots.stream().noneMatch(fileStorage.getColdRoot()::startsWith)) {
+            roots.add(fileStorage.getColdRoot());
+        }
+        List<String> orphans = new ArrayList<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> !isInternal(root, path))
+                        .filter(path -> !knownPaths.contains(path.toAbsolutePath().normalize()))
+                        .filter(path -> isOlderThan(path, cutoff))
+                        .limit(MAX_REPORTED_ITEMS - orphans.size())
+                        .forEach(path -> orphans.add(path.toString()));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not walk storage volume " + root, e);
+            }
+            if (orphans.size() >= MAX_REPORTED_ITEMS) {
+                break;
+            }
+        }
+        return orphans;
+    }
+
+    // Dot-prefixed entries hold bookkeeping such as the checkpoint, never user files
+    private boolean isInternal(Path root, Path path) {
+        for (Path part : root.relativize(path)) {
+            if (part.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOlderThan(Path path, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long readCheckpoint() {
+        Path checkpointFile = fileStorage.getUploadPath().resolve(CHECKPOINT_FILE);
+        try {
+            if (Files.exists(checkpointFile)) {
+                return Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warning("Ignoring unreadable scrub checkpoint: " + e.getMessage());
+        }
+        return 0L;
+    }
+
+    private void writeCheckpoint(long checkpoint) {
+        Path checkpointFile = fileStorage.getUploadPath().resolve(CHECKPOINT_FILE);
+        Path tempFile = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try {
+            Files.createDirectories(checkpointFile.getParent());
+            Files.writeString(tempFile, Long.toString(checkpoint), StandardCharsets.UTF_8);
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Could not write scrub checkpoint: " + e.getMessage());
+        }
+    }
+
+    private void publish(IntegrityReport report) {
+        verifiedGauge.set(report.getFilesVerified());
+        corruptGauge.set(report.getCorruptFileIds().size());
+        missingGauge.set(report.getMissingFileIds().size());
+        orphanGauge.set(report.getOrphanPaths().size());
+        meterRegistry.counter("integrity.scrub.bytes").increment(report.getBytesVerified());
+
+        logger.info(String.format("Integrity scrub finished: verified=%d backfilled=%d corrupt=%d missing=%d orphans=%d passCompleted=%s",
+                report.getFilesVerified(), report.getChecksumsBackfilled(), report.getCorruptFileIds().size(),
+                report.getMissingFileIds().size(), report.getOrphanPaths().size(), report.isPassCompleted()));
+    }
+
+    private static <T> void addCapped(List<T> list, T item) {
+        synchronized (list) {
+            if (list.size() < MAX_REPORTED_ITEMS) {
+                list.add(item);
+            }
+        }
+    }
+
+    private static class ScrubTally {
+        private final AtomicLong verified = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong backfilled = new AtomicLong();
+        private final List<Long> corrupt = new ArrayList<>();
+        private final List<Long> missing = new ArrayList<>();
+    }
+}
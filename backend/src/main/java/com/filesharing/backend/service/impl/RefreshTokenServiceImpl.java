@@ -0,0 +1,118 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.exception.InvalidTokenException;
+import com.filesharing.backend.model.RefreshToken;
+import com.filesharing.backend.model.User;
+import com.filesharing.backend.repository.RefreshTokenRepository;
+import com.filesharing.backend.service.RefreshTokenService;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.logging.Logger;
+
+@Service
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    private static final Logger logger = Logger.getLogger(RefreshTokenServiceImpl.class.getName());
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${jwt.refresh-expiration}")
+    private long refreshExpirationMs;
+
+    // A token presented again this soon after its rotation is a concurrent refresh, e.g. from a second
+    // browser tab, and is refused without ending the user's other sessions
+    @Value("${jwt.refresh-reuse-grace:PT30S}")
+    private Duration reuseGrace;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Override
+    @Transactional
+    public String createRefreshToken(User user) {
+        byte[] randomBytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(randomBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+
+        LocalDateTime now = LocalDateTime.now();
+        RefreshToken refreshToken = RefreshToken.builder()
+                .tokenHash(hash(token))
+                .issuedAt(now)
+                .expiresAt(now.plusNanos(refreshExpirationMs * 1_000_000L))
+                .revoked(false)
+                .user(user)
+                .build();
+        refreshTokenRepository.save(refreshToken);
+
+        return token;
+    }
+
+    @Override
+    @Transactional(noRollbackFor = InvalidTokenException.class)
+    public RotatedToken rotateRefreshToken(String token) {
+        RefreshToken current = refreshTokenRepository.findByTokenHash(hash(token))
+                .orElseThrow(() -> new InvalidTokenException("Invalid refresh token"));
+
+        if (!current.isRevoked() && current.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new InvalidTokenException("Refresh token has expired");
+        }
+
+        // The conditional update decides who rotates: a concurrent refresh with the same token
+        // waits for the winner's commit and then finds the token revoked
+        LocalDateTime now = LocalDateTime.now();
+        if (current.isRevoked() || refreshTokenRepository.rotateIfActive(current.getId(), now) == 0) {
+            LocalDateTime replacedAt = refreshTokenRepository.findReplacedAt(current.getId());
+            if (replacedAt != null && !replacedAt.plus(reuseGrace).isBefore(now)) {
+                throw new InvalidTokenException("Refresh token was already used");
+            }
+            // A rotated token came back later, or a logged out one: assume it was stolen and end
+            // every session of this user
+            logger.warning("Refresh token reuse detected for user " + current.getUser().getId());
+            refreshTokenRepository.revokeAllByUser(current.getUser());
+            throw new InvalidTokenException("Invalid refresh token");
+        }
+
+        // The caller builds the access token outside this transaction
+        User user = current.getUser();
+        Hibernate.initialize(user);
+        return new RotatedToken(user, createRefreshToken(user));
+    }
+
+    @Override
+    @Transactional
+    public void revokeRefreshToken(String token) {
+        refreshTokenRepository.findByTokenHash(hash(token)).ifPresent(refreshToken -> {
+            refreshToken.setRevoked(true);
+            refreshTokenRepository.save(refreshToken);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-interval:PT6H}")
+    public void deleteExpiredTokens() {
+        refreshTokenRepository.deleteExpired(LocalDateTime.now());
+    }
+
+    private String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.repository.FileRepository;
+import com.filesharing.backend.service.StorageRebalanceService;
+import com.filesharing.backend.storage.ByteRateLimiter;
+import com.filesharing.backend.storage.FileStorage;
+import com.filesharing.backend.storage.StoragePool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Levels disk usage across the storage volumes in the background, typically after a volume was added.
+// Each run moves copies from the fullest to the emptiest volume until both are near the average.
+// The old copy is only removed after a delay, so a download that resolved it just before the move
+// can still open it.
+@Service
+public class StorageRebalanceServiceImpl implements StorageRebalanceService {
+
+    private static final Logger logger = Logger.getLogger(StorageRebalanceServiceImpl.class.getName());
+
+    @Value("${file.storage.rebalance.enabled:true}")
+    private boolean enabled;
+
+    // Runs start once the used fractions of the fullest and emptiest volume differ by more than this
+    @Value("${file.storage.rebalance.threshold:0.1}")
+    private double threshold;
+
+    @Value("${file.storage.rebalance.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.storage.rebalance.max-bytes-per-second:20MB}")
+    private DataSize maxBytesPerSecond;
+
+    @Value("${file.storage.rebalance.max-run-duration:PT30M}")
+    private Duration maxRunDuration;
+
+    @Value("${file.storage.rebalance.delete-delay:PT5M}")
+    private Duration deleteDelay;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorage fileStorage;
+
+    @Autowired
+    private StoragePool storagePool;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Copies that were replaced by a move. Entries lost on restart surface as orphans in the integrity scrub.
+    private final Queue<MovedCopy> movedCopies = new ConcurrentLinkedQueue<>();
+
+    private ByteRateLimiter rateLimiter;
+
+    private Counter movedFiles;
+    private Counter movedBytes;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new ByteRateLimiter(maxBytesPerSecond.toBytes());
+        movedFiles = meterRegistry.counter("storage.rebalance.files");
+        movedBytes = meterRegistry.counter("storage.rebalance.bytes");
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.rebalance.interval:PT15M}", initialDelayString = "${file.storage.rebalance.initial-delay:PT10M}")
+    public void scheduledRebalance() {
+        if (enabled) {
+            rebalance();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.rebalance.purge-interval:PT1M}")
+    public void purgeMovedCopies() {
+        Instant now = Instant.now();
+        MovedCopy moved;
+        while ((moved = movedCopies.peek()) != null && moved.deleteAfter.isBefore(now)) {
+            movedCopies.poll();
+            // A file copied from the old row while the move committed still refers to the old path
+            if (fileRepository.countReferences(moved.path.toString()) > 0) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(moved.path);
+            } catch (IOException e) {
+                logger.warning("Could not remove moved copy " + moved.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int rebalance() {
+        if (storagePool.getVolumes().size() < 2 || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            return rebalanceOnce();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int rebalanceOnce() {
+        List<StoragePool.Volume> volumes = storagePool.getVolumes();
+        StoragePool.Volume source = volumes.stream().max(Comparator.comparingDouble(StoragePool.Volume::usedRatio)).get();
+        StoragePool.Volume target = volumes.stream().min(Comparator.comparingDouble(StoragePool.Volume::usedRatio)).get();
+        if (source.usedRatio() - target.usedRatio() < threshold) {
+            return 0;
+        }
+
+        // Free space on the source only shows up once moved copies are purged, so the amount to move
+        // is fixed up front: whatever brings the closer of the two to the average of both
+        double average = (source.usedRatio() + target.usedRatio()) / 2;
+        long budget = (long) Math.min((source.usedRatio() - average) * source.totalSpace(),
+                (average - target.usedRatio()) * target.totalSpace());
+
+        Instant deadline = Instant.now().plus(maxRunDuration);
+        long cursor = 0L;
+        long bytes = 0L;
+        int moved = 0;
+        try {
+            while (bytes < budget && Instant.now().isBefore(deadline) && !Thread.currentThread().isInterrupted()) {
+                List<FileEntity> batch = fileRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (FileEntity file : batch) {
+                    if (bytes >= budget || Instant.now().isAfter(deadline)) {
+                        break;
+                    }
+                    if (move(file, source, target)) {
+                        moved++;
+                        bytes += file.getFileSize();
+                    }
+                }
+                cursor = batch.get(batch.size() - 1).getId();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.info(String.format("Storage rebalance moved %d files (%d bytes) from %s to %s",
+                moved, bytes, source.getRoot(), target.getRoot()));
+        return moved;
+    }
+
+    private boolean move(FileEntity file, StoragePool.Volume source, StoragePool.Volume target) throws InterruptedException {
+        List<Path> copies = FileStorage.copiesOf(file);
+        int index = -1;
+        for (int i = 0; i < copies.size(); i++) {
+            StoragePool.Volume volume = storagePool.volumeOf(copies.get(i));
+            if (volume == target) {
+                // Replicas must stay on distinct volumes
+                return false;
+            }
+            if (volume == source) {
+                index = i;
+            }
+        }
+        if (index < 0 || !Files.exists(copies.get(index))) {
+            return false;
+        }
+        if (Files.exists(target.getRoot().resolve(copies.get(index).getFileName()))) {
+            // Already moved for another file sharing the copy
+            return false;
+        }
+
+        String oldPath = index == 0 ? file.getFilePath() : file.getReplicaPath();
+        Path newPath;
+        try {
+            newPath = fileStorage.copyToVolume(copies.get(index), target, rateLimiter);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not move file " + file.getId() + " to " + target.getRoot(), e);
+            return false;
+        }
+
+        // The row may have changed while the bytes were copied, then the new copy is dropped
+        int updated = index == 0
+                ? fileRepository.moveFilePath(oldPath, newPath.toString())
+                : fileRepository.moveReplicaPath(oldPath, newPath.toString());
+        if (updated == 0) {
+            try {
+                Files.deleteIfExists(newPath);
+            } catch (IOException e) {
+                logger.warning("Could not remove unused copy " + newPath + ": " + e.getMessage());
+            }
+            return false;
+        }
+
+        movedCopies.add(new MovedCopy(copies.get(index), Instant.now().plus(deleteDelay)));
+        movedFiles.increment();
+        movedBytes.increment(file.getFileSize());
+        return true;
+    }
+
+    private static class MovedCopy {
+        private final Path path;
+        private final Instant deleteAfter;
+
+        MovedCopy(Path path, Instant deleteAfter) {
+            this.path = path;
+            this.deleteAfter = deleteAfter;
+        }
+    }
+}
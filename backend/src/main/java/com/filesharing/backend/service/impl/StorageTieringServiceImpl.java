@@ -0,0 +1,301 @@
+package com.filesharing.backend.service.impl;
+
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.repository.FileRepository;
+import com.filesharing.backend.service.StorageTieringService;
+import com.filesharing.backend.storage.ByteRateLimiter;
+import com.filesharing.backend.storage.ColdFileReadEvent;
+import com.filesharing.backend.storage.FileStorage;
+import com.filesharing.backend.storage.StoredFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Two storage tiers: the hot volumes of the storage pool and a compressed cold tier. Files that
+// have not been downloaded or viewed for file.tier.idle-after are compressed into the cold tier in
+// throttled batches; reading a cold file serves it decompressed and queues it for promotion back
+// to the hot volumes. Replaced copies are removed after a delay, like the rebalancer's, so a
+// download that resolved the old path just before the move can still open it.
+@Service
+public class StorageTieringServiceImpl implements StorageTieringService {
+
+    private static final Logger logger = Logger.getLogger(StorageTieringServiceImpl.class.getName());
+
+    @Value("${file.tier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.tier.idle-after:P90D}")
+    private Duration idleAfter;
+
+    // Small files gain little from the cold tier and are the ones most likely read again
+    @Value("${file.tier.min-file-size:1MB}")
+    private DataSize minFileSize;
+
+    @Value("${file.tier.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.tier.max-bytes-per-second:20MB}")
+    private DataSize maxBytesPerSecond;
+
+    @Value("${file.tier.max-run-duration:PT30M}")
+    private Duration maxRunDuration;
+
+    @Value("${file.tier.delete-delay:PT5M}")
+    private Duration deleteDelay;
+
+    @Value("${file.tier.promote-on-access:true}")
+    private boolean promoteOnAccess;
+
+    // Promotions waiting beyond this are dropped, the file is promoted on a later read
+    @Value("${file.tier.promotion-queue-capacity:1000}")
+    private int promotionQueueCapacity;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorage fileStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Files with a promotion queued or running, so a burst of reads queues one
+    private final Set<Long> pendingPromotions = ConcurrentHashMap.newKeySet();
+
+    // Copies replaced by a tier move. Entries lost on restart surface as orphans in the integrity scrub.
+    private final Queue<ReplacedCopy> replacedCopies = new ConcurrentLinkedQueue<>();
+
+    private ByteRateLimiter rateLimiter;
+
+    private ThreadPoolExecutor promoter;
+
+    private Counter demotedFiles;
+    private Counter demotedBytes;
+    private Counter promotedFiles;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new ByteRateLimiter(maxBytesPerSecond.toBytes());
+        promoter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, promotionQueueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "tier-promoter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        demotedFiles = meterRegistry.counter("storage.tier.demoted.files");
+        demotedBytes = meterRegistry.counter("storage.tier.demoted.bytes");
+        promotedFiles = meterRegistry.counter("storage.tier.promoted.files");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        promoter.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${file.tier.interval:PT1H}", initialDelayString = "${file.tier.initial-delay:PT20M}")
+    public void scheduledDemotion() {
+        if (enabled) {
+            demoteIdleFiles();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.tier.purge-interval:PT1M}")
+    public void purgeReplacedCopies() {
+        Instant now = Instant.now();
+        ReplacedCopy replaced;
+        while ((replaced = replacedCopies.peek()) != null && replaced.deleteAfter.isBefore(now)) {
+            replacedCopies.poll();
+            for (String location : FileStorage.locationsOf(replaced.file)) {
+                // A file copied from the old row while the move committed still refers to the old location
+                if (fileRepository.countReferences(location) > 0) {
+                    continue;
+                }
+                try {
+                    fileStorage.deleteCopy(location);
+                } catch (IOException e) {
+                    logger.warning("Could not remove replaced copy " + location + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public void onColdFileRead(ColdFileReadEvent event) {
+        if (!promoteOnAccess || !pendingPromotions.add(event.fileId())) {
+            return;
+        }
+        try {
+            promoter.execute(() -> {
+                try {
+                    promote(event.fileId());
+                } finally {
+                    pendingPromotions.remove(event.fileId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingPromotions.remove(event.fileId());
+        }
+    }
+
+    @Override
+    public int demoteIdleFiles() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        int demoted = 0;
+        long bytes = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(idleAfter);
+            String coldPrefix = fileStorage.getColdRoot().toString() + File.separator + "%";
+            Instant deadline = Instant.now().plus(maxRunDuration);
+            long cursor = 0L;
+            while (Instant.now().isBefore(deadline) && !Thread.currentThread().isInterrupted()) {
+                List<FileEntity> batch = fileRepository.findIdleHotFiles(cursor, cutoff, minFileSize.toBytes(),
+                        coldPrefix, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (FileEntity file : batch) {
+                    if (Instant.now().isAfter(deadline)) {
+                        break;
+                    }
+                    if (demote(file)) {
+                        demoted++;
+                        bytes += file.getFileSize();
+                    }
+                }
+                cursor = batch.get(batch.size() - 1).getId();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+
+        if (demoted > 0) {
+            demotedFiles.increment(demoted);
+            demotedBytes.increment(bytes);
+            logger.info(String.format("Moved %d idle files (%d bytes) to the cold tier", demoted, bytes));
+        }
+        return demoted;
+    }
+
+    private boolean demote(FileEntity file) throws InterruptedException {
+        if (fileStorage.isCold(file)
+                || Files.exists(fileStorage.getColdRoot().resolve(Paths.get(file.getFilePath()).getFileName()))) {
+            // Already demoted for another file sharing the copy
+            return false;
+        }
+        Path coldPath;
+        try {
+            coldPath = fileStorage.copyToColdTier(file, rateLimiter);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not move file " + file.getId() + " to the cold tier", e);
+            return false;
+        }
+
+        // A file moved by the rebalancer or promoted while it was compressed keeps its row; the cold copy is dropped
+        if (fileRepository.relocate(file.getFilePath(), coldPath.toString(), null) == 0) {
+            deleteQuietly(coldPath);
+            return false;
+        }
+        replacedCopies.add(new ReplacedCopy(file, Instant.now().plus(deleteDelay)));
+        return true;
+    }
+
+    @Override
+    public boolean promote(Long fileId) {
+        Optional<FileEntity> found = fileRepository.findById(fileId);
+        if (found.isEmpty() || !fileStorage.isCold(found.get())) {
+            return false;
+        }
+        FileEntity file = found.get();
+
+        StoredFile stored;
+        try (InputStream plaintext = fileStorage.openCopy(file.getFilePath())) {
+            stored = fileStorage.store(plaintext, file.getFileName());
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not promote file " + fileId + " from the cold tier", e);
+            return false;
+        }
+        FileEntity hot = FileEntity.builder()
+                .id(fileId)
+                .filePath(stored.getFilePath())
+                .replicaPath(stored.getReplicaPath())
+                .build();
+
+        if (file.getChecksum() != null && !file.getChecksum().equals(stored.getChecksum())) {
+            logger.warning("Cold copy of file " + fileId + " does not match its checksum, leaving it cold");
+            deleteQuietly(hot);
+            return false;
+        }
+        if (fileRepository.relocate(file.getFilePath(), stored.getFilePath(), stored.getReplicaPath()) == 0) {
+            deleteQuietly(hot);
+            return false;
+        }
+        replacedCopies.add(new ReplacedCopy(file, Instant.now().plus(deleteDelay)));
+        promotedFiles.increment();
+        return true;
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warning("Could not remove " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(FileEntity file) {
+        try {
+            fileStorage.delete(file);
+        } catch (IOException e) {
+            logger.warning("Could not remove " + file.getFilePath() + ": " + e.getMessage());
+        }
+    }
+
+    // The row as it was before the move, so every copy it pointed to is removed
+    private static class ReplacedCopy {
+        private final FileEntity file;
+        private final Instant deleteAfter;
+
+        ReplacedCopy(FileEntity file, Instant deleteAfter) {
+            this.file = file;
+            this.deleteAfter = deleteAfter;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.filesharing.backend.storage;
+
+// Paces background I/O to a fixed number of bytes per second, shared by all threads using it.
+// A rate of zero or less disables throttling.
+public class ByteRateLimiter {
+
+    private final long bytesPerSecond;
+
+    private long nextFreeNanos = System.nanoTime();
+
+    public ByteRateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now) {
+                nextFreeNanos = now;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += bytes * 1_000_000_000L / bytesPerSecond;
+        }
+
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+        }
+    }
+}
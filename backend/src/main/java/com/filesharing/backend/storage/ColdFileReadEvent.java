@@ -0,0 +1,5 @@
+package com.filesharing.backend.storage;
+
+// Published when a file is served from the cold tier, so it can be promoted back to the hot volumes
+public record ColdFileReadEvent(Long fileId) {
+}
@@ -0,0 +1,115 @@
+package com.filesharing.backend.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Cheaper storage for files nobody has read in a while, typically a large slow volume. Files keep
+// their name and are stored gzip-compressed; with encryption enabled the compressed stream is
+// encrypted, since ciphertext does not compress. Cold files are read sequentially, a range request
+// decompresses everything before its first byte.
+@Component
+public class ColdTier {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Suffix of files still being written, as on the hot volumes
+    private static final String TEMP_SUFFIX = ".part";
+
+    @Value("${file.tier.cold-dir:./cold}")
+    private String coldDir;
+
+    @Value("${file.tier.compression-level:6}")
+    private int compressionLevel;
+
+    @Autowired
+    private CommitCoordinator commitCoordinator;
+
+    @Autowired
+    private FileEncryption fileEncryption;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(coldDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean contains(String location) {
+        return location != null && !PackStore.isPacked(location)
+                && Paths.get(location).toAbsolutePath().normalize().startsWith(root);
+    }
+
+    // Compresses the plaintext into the cold tier under the given name, paced by the rate limiter,
+    // and returns the committed path
+    public Path write(InputStream plaintext, String name, ByteRateLimiter rateLimiter) throws IOException, InterruptedException {
+        Path filePath = root.resolve(name);
+        Path tempPath = root.resolve(name + TEMP_SUFFIX);
+        if (Files.exists(filePath)) {
+            throw new FileAlreadyExistsException(filePath.toString());
+        }
+        try {
+            try (OutputStream output = openCompressed(tempPath)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = plaintext.read(buffer)) != -1) {
+                    rateLimiter.acquire(read);
+                    output.write(buffer, 0, read);
+                }
+            }
+            commitCoordinator.commit(tempPath, filePath);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        return filePath;
+    }
+
+    private OutputStream openCompressed(Path tempPath) throws IOException {
+        OutputStream file = Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW);
+        try {
+            OutputStream sink = fileEncryption.isEnabled() ? fileEncryption.encrypt(file) : file;
+            return new LeveledGzipOutputStream(sink, compressionLevel);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Plaintext of a cold file
+    public InputStream open(Path path) throws IOException {
+        FileEncryption.EncryptedFile encrypted = fileEncryption.open(path);
+        InputStream compressed = encrypted != null ? encrypted.newInputStream() : Files.newInputStream(path);
+        try {
+            return new GZIPInputStream(compressed, COPY_BUFFER_SIZE);
+        } catch (IOException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+
+    // GZIPOutputStream always deflates at the default level
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, COPY_BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
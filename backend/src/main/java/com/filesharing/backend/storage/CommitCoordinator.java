@@ -0,0 +1,215 @@
+package com.filesharing.backend.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Moves a fully written temporary file to its final name, so readers never see a partial file,
+// and makes it durable according to file.durability.mode before the upload is acknowledged.
+// In group-commit mode each uploader fsyncs its own file, so those syncs run in parallel and the
+// filesystem can merge them, then queues up here; a single thread renames every file that arrived
+// within the commit window and syncs each touched directory once for the whole batch.
+@Component
+public class CommitCoordinator {
+
+    private static final Logger logger = Logger.getLogger(CommitCoordinator.class.getName());
+
+    private final DurabilityMode mode;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final BlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running = true;
+
+    private Thread committer;
+
+    public CommitCoordinator(
+            @Value("${file.durability.mode:group-commit}") DurabilityMode mode,
+            @Value("${file.durability.commit-window:2ms}") Duration commitWindow,
+            @Value("${file.durability.max-batch-size:256}") int maxBatchSize) {
+        this.mode = mode;
+        this.windowNanos = commitWindow.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode != DurabilityMode.GROUP_COMMIT) {
+            return;
+        }
+        committer = new Thread(this::runCommitter, "upload-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    // Returns once the file is visible under its final name and as durable as the mode promises
+    public void commit(Path tempFile, Path target) throws IOException {
+        switch (mode) {
+            case NONE:
+                moveIntoPlace(tempFile, target);
+                break;
+            case PER_FILE:
+                force(tempFile);
+                moveIntoPlace(tempFile, target);
+                forceDirectory(target.getParent());
+                break;
+            default:
+                force(tempFile);
+                awaitGroupCommit(new PendingCommit(tempFile, target));
+        }
+    }
+
+    private void awaitGroupCommit(PendingCommit commit) throws IOException {
+        queue.add(commit);
+        // The committer drains the queue before it stops, so only a commit it can no longer see is refused
+        if (!running && queue.remove(commit)) {
+            throw new IOException("Storage is shutting down");
+        }
+        try {
+            commit.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upload to be committed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not commit " + commit.target, e.getCause());
+        }
+    }
+
+    private void runCommitter() {
+        List<PendingCommit> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCommit first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep collecting until the window closes, so uploads finishing together share the flush
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || batch.size() >= maxBatchSize) {
+                        break;
+                    }
+                    PendingCommit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Group commit failed", e);
+                batch.forEach(commit -> commit.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        IOException shutdown = new IOException("Storage is shutting down");
+        PendingCommit leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.result.completeExceptionally(shutdown);
+        }
+    }
+
+    private void flush(List<PendingCommit> batch) {
+        // File contents were synced by the uploaders; one sync per directory makes the renames durable
+        Map<Path, List<PendingCommit>> byDirectory = new LinkedHashMap<>();
+        for (PendingCommit commit : batch) {
+            try {
+                moveIntoPlace(commit.tempFile, commit.target);
+                byDirectory.computeIfAbsent(commit.target.getParent(), directory -> new ArrayList<>()).add(commit);
+            } catch (IOException e) {
+                commit.result.completeExceptionally(e);
+            }
+        }
+
+        byDirectory.forEach((directory, commits) -> {
+            try {
+                forceDirectory(directory);
+                commits.forEach(commit -> commit.result.complete(null));
+            } catch (IOException e) {
+                commits.forEach(commit -> commit.result.completeExceptionally(e));
+            }
+        });
+    }
+
+    private static void moveIntoPlace(Path tempFile, Path target) throws IOException {
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Some platforms cannot open a directory; the rename is then as durable as the filesystem makes it
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (committer != null) {
+            committer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static class PendingCommit {
+        private final Path tempFile;
+        private final Path target;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingCommit(Path tempFile, Path target) {
+            this.tempFile = tempFile;
+            this.target = target;
+        }
+    }
+}
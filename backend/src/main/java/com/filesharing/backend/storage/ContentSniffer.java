@@ -0,0 +1,66 @@
+package com.filesharing.backend.storage;
+
+import java.nio.charset.StandardCharsets;
+
+// Recognizes common file types from their leading bytes. Used when the client sends no
+// content type, or only application/octet-stream.
+public final class ContentSniffer {
+
+    // Enough for every signature below, including the "ftyp" box of MP4 files
+    public static final int HEAD_SIZE = 16;
+
+    private ContentSniffer() {
+    }
+
+    // Returns null when the type is not recognized
+    public static String detect(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x25, 0x50, 0x44, 0x46, 0x2D)) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 0, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 0x47, 0x49, 0x46, 0x38)) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, 0x52, 0x49, 0x46, 0x46) && startsWith(head, length, 8, 0x57, 0x45, 0x42, 0x50)) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 4, 0x66, 0x74, 0x79, 0x70)) {
+            return "video/mp4";
+        }
+        if (startsWith(head, length, 0, 0x49, 0x44, 0x33) || startsWith(head, length, 0, 0xFF, 0xFB)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(head, length, 0, 0x50, 0x4B, 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (isHtml(head, length)) {
+            return "text/html";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHtml(byte[] head, int length) {
+        String text = new String(head, 0, length, StandardCharsets.ISO_8859_1).stripLeading().toLowerCase();
+        return text.startsWith("<!doctype html") || text.startsWith("<html");
+    }
+}
@@ -0,0 +1,11 @@
+package com.filesharing.backend.storage;
+
+// How hard FileStorage works to make a stored file survive a crash before the upload is acknowledged
+public enum DurabilityMode {
+    // Rename into place only; the bytes reach the disk whenever the OS writes them back
+    NONE,
+    // fsync every file and its directory before returning
+    PER_FILE,
+    // Concurrent uploads share one round of fsyncs, flushed by the commit coordinator
+    GROUP_COMMIT
+}
@@ -0,0 +1,58 @@
+package com.filesharing.backend.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.function.UnaryOperator;
+
+// Plaintext view of an encrypted stored file. It deliberately is not a file resource, so nothing
+// hands the ciphertext to sendfile or a file channel. Streams skip by seeking to the segment that
+// holds the target position, which keeps HTTP range requests cheap.
+public class EncryptedFileResource extends AbstractResource {
+
+    private final FileEncryption.EncryptedFile file;
+
+    private final String filename;
+
+    // Applied to every stream opened, for volume load accounting and tracing
+    private final UnaryOperator<InputStream> streamDecorator;
+
+    // Served under the upload name, the path is a storage detail
+    public EncryptedFileResource(FileEncryption.EncryptedFile file, String filename, UnaryOperator<InputStream> streamDecorator) {
+        this.file = file;
+        this.filename = filename;
+        this.streamDecorator = streamDecorator;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return streamDecorator.apply(file.newInputStream());
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(file.getPath());
+    }
+
+    @Override
+    public long contentLength() {
+        return file.getPlaintextLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(file.getPath()).toMillis();
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "encrypted file [" + file.getPath() + "]";
+    }
+}
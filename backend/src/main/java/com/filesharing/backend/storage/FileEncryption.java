@@ -0,0 +1,201 @@
+package com.filesharing.backend.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Envelope encryption of stored files. Every file gets its own random data key, wrapped with the
+// master key and kept in the file header. The content is cut into fixed-size segments, each sealed
+// with AES-GCM under its own nonce, so files are encrypted and decrypted as a stream and a reader
+// can start at any segment. The JDK's AES-GCM uses the CPU's AES and carry-less multiply instructions.
+//
+// Header: magic "FSE" + version, segment size, nonce prefix, wrap nonce, wrapped data key.
+// Segment i: nonce = prefix || i, additional data = 1 if it is the last segment, else 0,
+// so truncating or reordering segments fails authentication.
+// Files without the magic are plaintext written before encryption was enabled and are read as is.
+@Component
+public class FileEncryption {
+
+    static final String CIPHER = "AES/GCM/NoPadding";
+
+    static final int TAG_LENGTH = 16;
+
+    static final int NONCE_PREFIX_LENGTH = 8;
+
+    private static final byte[] MAGIC = {'F', 'S', 'E', 1};
+
+    private static final int KEY_LENGTH = 32;
+
+    private static final int NONCE_LENGTH = 12;
+
+    // Bytes covered by the key wrap's additional data: magic, segment size, nonce prefix
+    private static final int BOUND_HEADER_LENGTH = MAGIC.length + 4 + NONCE_PREFIX_LENGTH;
+
+    static final int HEADER_LENGTH = BOUND_HEADER_LENGTH + NONCE_LENGTH + KEY_LENGTH + TAG_LENGTH;
+
+    @Value("${file.encryption.enabled:false}")
+    private boolean enabled;
+
+    // Base64 of a 256-bit key; also needed to read files written while encryption was enabled
+    @Value("${file.encryption.master-key:}")
+    private String masterKeyValue;
+
+    @Value("${file.encryption.segment-size:64KB}")
+    private DataSize segmentSize;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private SecretKey masterKey;
+
+    @PostConstruct
+    public void init() {
+        if (StringUtils.hasText(masterKeyValue)) {
+            byte[] keyBytes = Base64.getDecoder().decode(masterKeyValue.trim());
+            if (keyBytes.length != KEY_LENGTH) {
+                throw new IllegalStateException("file.encryption.master-key must be a base64 encoded 256-bit key");
+            }
+            masterKey = new SecretKeySpec(keyBytes, "AES");
+        } else if (enabled) {
+            throw new IllegalStateException("file.encryption.enabled requires file.encryption.master-key");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Writes the header to the target and returns a stream that encrypts everything written to it
+    public OutputStream encrypt(OutputStream target) throws IOException {
+        byte[] dataKey = new byte[KEY_LENGTH];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        byte[] wrapNonce = new byte[NONCE_LENGTH];
+        random.nextBytes(dataKey);
+        random.nextBytes(noncePrefix);
+        random.nextBytes(wrapNonce);
+        int segmentLength = Math.toIntExact(segmentSize.toBytes());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).putInt(segmentLength).put(noncePrefix);
+        try {
+            Cipher wrap = Cipher.getInstance(CIPHER);
+            wrap.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH * 8, wrapNonce));
+            wrap.updateAAD(header.array(), 0, BOUND_HEADER_LENGTH);
+            header.put(wrapNonce).put(wrap.doFinal(dataKey));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not wrap the data key", e);
+        }
+
+        target.write(header.array());
+        return new SegmentEncryptingOutputStream(target, new SecretKeySpec(dataKey, "AES"), noncePrefix, segmentLength);
+    }
+
+    // Null if the file is plaintext
+    public EncryptedFile open(Path path) throws IOException {
+        return open(path, 0L, -1L);
+    }
+
+    // Same for a blob stored at an offset inside a larger file, such as a pack segment; a negative
+    // length means the blob runs to the end of the file
+    public EncryptedFile open(Path path, long offset, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long blobLength = length >= 0 ? length : channel.size() - offset;
+            if (blobLength < HEADER_LENGTH) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header, offset + header.position()) >= 0) {
+                // Read the whole header
+            }
+            if (header.position() < HEADER_LENGTH || !Arrays.equals(header.array(), 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                return null;
+            }
+            if (masterKey == null) {
+                throw new IOException("File " + path.getFileName() + " is encrypted but no master key is configured");
+            }
+
+            header.flip().position(MAGIC.length);
+            int segmentLength = header.getInt();
+            byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            byte[] wrapNonce = new byte[NONCE_LENGTH];
+            byte[] wrappedKey = new byte[KEY_LENGTH + TAG_LENGTH];
+            header.get(noncePrefix).get(wrapNonce).get(wrappedKey);
+
+            byte[] dataKey;
+            try {
+                Cipher unwrap = Cipher.getInstance(CIPHER);
+                unwrap.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH * 8, wrapNonce));
+                unwrap.updateAAD(header.array(), 0, BOUND_HEADER_LENGTH);
+                dataKey = unwrap.doFinal(wrappedKey);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not unwrap the data key of " + path.getFileName(), e);
+            }
+            return new EncryptedFile(path, offset, new SecretKeySpec(dataKey, "AES"), noncePrefix, segmentLength, blobLength);
+        }
+    }
+
+    // Plaintext view of an encrypted file; every stream opened from it can seek to any segment
+    public static class EncryptedFile {
+        private final Path path;
+        private final long offset;
+        private final SecretKey dataKey;
+        private final byte[] noncePrefix;
+        private final int segmentLength;
+        private final long segmentCount;
+        private final long plaintextLength;
+
+        EncryptedFile(Path path, long offset, SecretKey dataKey, byte[] noncePrefix, int segmentLength, long fileLength) throws IOException {
+            this.path = path;
+            this.offset = offset;
+            this.dataKey = dataKey;
+            this.noncePrefix = noncePrefix;
+            this.segmentLength = segmentLength;
+
+            long body = fileLength - HEADER_LENGTH;
+            long sealedSegment = (long) segmentLength + TAG_LENGTH;
+            this.segmentCount = (body + sealedSegment - 1) / sealedSegment;
+            if (segmentLength <= 0 || segmentCount < 1 || body - (segmentCount - 1) * sealedSegment < TAG_LENGTH) {
+                throw new IOException("Encrypted file " + path.getFileName() + " is truncated");
+            }
+            this.plaintextLength = body - segmentCount * TAG_LENGTH;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getPlaintextLength() {
+            return plaintextLength;
+        }
+
+        public InputStream newInputStream() throws IOException {
+            return new SegmentDecryptingInputStream(FileChannel.open(path, StandardOpenOption.READ),
+                    offset, dataKey, noncePrefix, segmentLength, segmentCount, plaintextLength);
+        }
+    }
+
+    static byte[] segmentNonce(byte[] noncePrefix, long index) {
+        return ByteBuffer.allocate(NONCE_LENGTH).put(noncePrefix).putInt((int) index).array();
+    }
+
+    static byte[] segmentAad(boolean last) {
+        return new byte[] {(byte) (last ? 1 : 0)};
+    }
+}
@@ -0,0 +1,599 @@
+package com.filesharing.backend.storage;
+
+import com.filesharing.backend.exception.FileTooLargeException;
+import com.filesharing.backend.exception.ResourceNotFoundException;
+import com.filesharing.backend.model.FileEntity;
+import com.filesharing.backend.tracing.Span;
+import com.filesharing.backend.tracing.Tracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+// Owns the on-disk layout of uploaded files. Every read and write of file content goes through here.
+@Component
+public class FileStorage {
+
+    public static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    // Suffix of files still being written; they only get their final name once committed
+    private static final String TEMP_SUFFIX = ".part";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    // Per-file limit, enforced while copying so it also covers archive entries and streamed uploads
+    @Value("${file.max-file-size:10MB}")
+    private DataSize maxFileSize;
+
+    @Autowired
+    private CommitCoordinator commitCoordinator;
+
+    @Autowired
+    private FileEncryption fileEncryption;
+
+    @Autowired
+    private StoragePool storagePool;
+
+    @Autowired
+    private PackStore packStore;
+
+    @Autowired
+    private ColdTier coldTier;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private Tracer tracer;
+
+    @Autowired
+    private IoScheduler ioScheduler;
+
+    // The first volume, which also holds bookkeeping files
+    public Path getUploadPath() {
+        return Paths.get(uploadDir);
+    }
+
+    public List<Path> getVolumeRoots() {
+        List<Path> roots = new ArrayList<>();
+        for (StoragePool.Volume volume : storagePool.getVolumes()) {
+            roots.add(volume.getRoot());
+        }
+        return roots;
+    }
+
+    public Path getColdRoot() {
+        return coldTier.getRoot();
+    }
+
+    public boolean isCold(FileEntity file) {
+        return coldTier.contains(file.getFilePath());
+    }
+
+    public StoredFile store(InputStream content, String originalFilename) throws IOException {
+        MessageDigest digest = newDigest();
+        HeadCapturingInputStream headStream = new HeadCapturingInputStream(new SizeLimitedInputStream(content, maxFileSize.toBytes()));
+        DigestInputStream digestStream = new DigestInputStream(headStream, digest);
+
+        // Small uploads are appended to a pack segment. Replicated storage keeps one file per copy,
+        // packs live on a single volume.
+        InputStream source = digestStream;
+        if (packStore.isEnabled() && storagePool.getReplicationFactor() == 1) {
+            byte[] prefix = digestStream.readNBytes(Math.toIntExact(packStore.getThreshold()) + 1);
+            if (prefix.length <= packStore.getThreshold()) {
+                digestStream.close();
+                return storePacked(prefix, digest, headStream);
+            }
+            source = new SequenceInputStream(new ByteArrayInputStream(prefix), digestStream);
+        }
+
+        // Generate a unique filename; only the last path segment is kept on disk
+        String uniqueFilename = UUID.randomUUID().toString() + "_" + StringUtils.getFilename(StringUtils.cleanPath(originalFilename));
+        
+        // Save to a temporary file on every target volume, hashing, counting and sniffing bytes in the
+        // same pass, then commit each copy under its final name
+        List<StoragePool.Volume> targets = storagePool.place();
+        List<Path> filePaths = new ArrayList<>(targets.size());
+        List<Path> tempPaths = new ArrayList<>(targets.size());
+        for (StoragePool.Volume volume : targets) {
+            filePaths.add(volume.getRoot().resolve(uniqueFilename));
+            tempPaths.add(volume.getRoot().resolve(uniqueFilename + TEMP_SUFFIX));
+        }
+        long fileSize;
+        targets.forEach(StoragePool.Volume::begin);
+        try (Span span = tracer.startSpan("storage.write");
+             InputStream input = source) {
+            try (OutputStream output = openOutput(tempPaths)) {
+                fileSize = input.transferTo(output);
+            }
+            span.setAttribute("bytes", fileSize);
+            span.setAttribute("copies", targets.size());
+            try (Span commitSpan = tracer.startSpan("storage.commit")) {
+                for (int i = 0; i < targets.size(); i++) {
+                    commitCoordinator.commit(tempPaths.get(i), filePaths.get(i));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // A replica that did commit is removed too, a file is stored with all its copies or not at all
+            for (int i = 0; i < targets.size(); i++) {
+                Files.deleteIfExists(tempPaths.get(i));
+                Files.deleteIfExists(filePaths.get(i));
+            }
+            throw e;
+        } finally {
+            targets.forEach(StoragePool.Volume::end);
+        }
+        
+        String replicaPath = filePaths.size() > 1 ? filePaths.get(1).toString() : null;
+        return new StoredFile(filePaths.get(0).toString(), replicaPath, fileSize, HexFormat.of().formatHex(digest.digest()),
+                ContentSniffer.detect(headStream.head, headStream.headLength));
+    }
+
+    private StoredFile storePacked(byte[] data, MessageDigest digest, HeadCapturingInputStream headStream) throws IOException {
+        byte[] blob = data;
+        if (fileEncryption.isEnabled()) {
+            ByteArrayOutputStream sealed = new ByteArrayOutputStream(data.length + FileEncryption.HEADER_LENGTH + FileEncryption.TAG_LENGTH);
+            try (OutputStream output = fileEncryption.encrypt(sealed)) {
+                output.write(data);
+            }
+            blob = sealed.toByteArray();
+        }
+
+        String location;
+        try (Span span = tracer.startSpan("storage.pack")) {
+            span.setAttribute("bytes", data.length);
+            location = packStore.append(blob);
+        }
+        return new StoredFile(location, null, data.length, HexFormat.of().formatHex(digest.digest()),
+                ContentSniffer.detect(headStream.head, headStream.headLength));
+    }
+
+    // Encrypted files come back as a decrypting resource, plaintext ones as plain file resources.
+    // Replicated files are read from the copy on the least busy volume, cold files are decompressed
+    // on the fly and queued for promotion.
+    public Resource load(FileEntity file) {
+        return load(file, null);
+    }
+
+    // Reads for user requests pass through the I/O scheduler in the given class; background jobs
+    // pass null and pace themselves
+    public Resource load(FileEntity file, IoClass ioClass) {
+        if (PackStore.isPacked(file.getFilePath())) {
+            return loadPacked(file, ioClass);
+        }
+        if (coldTier.contains(file.getFilePath())) {
+            return loadCold(file, ioClass);
+        }
+        Path filePath = storagePool.selectReplica(copiesOf(file));
+        if (filePath == null) {
+            throw new ResourceNotFoundException("File not found: " + file.getFileName());
+        }
+        StoragePool.Volume volume = storagePool.volumeOf(filePath);
+        UnaryOperator<InputStream> streamDecorator = inputStream -> {
+            InputStream tracked = volume != null ? volume.track(inputStream) : inputStream;
+            return tracer.traceStream("storage.read", schedule(tracked, ioClass));
+        };
+        try {
+            FileEncryption.EncryptedFile encrypted = fileEncryption.open(filePath);
+            return encrypted != null
+                    ? new EncryptedFileResource(encrypted, file.getFileName(), streamDecorator)
+                    : new DecoratedFileResource(filePath, file.getFileName(), streamDecorator);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Packed files are read straight from their segment; encrypted ones still decrypt segment by segment
+    private Resource loadPacked(FileEntity file, IoClass ioClass) {
+        long needleId = PackStore.needleId(file.getFilePath());
+        UnaryOperator<InputStream> streamDecorator = inputStream -> tracer.traceStream("storage.read", schedule(inputStream, ioClass));
+        try {
+            PackStore.Needle needle = packStore.locate(needleId);
+            FileEncryption.EncryptedFile encrypted = fileEncryption.open(needle.path(), needle.offset(), needle.length());
+            return encrypted != null
+                    ? new EncryptedFileResource(encrypted, file.getFileName(), streamDecorator)
+                    : new PackedFileResource(needleId, needle, file.getFileName(), streamDecorator);
+        } catch (NoSuchFileException ex) {
+            throw new ResourceNotFoundException("File not found: " + file.getFileName());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Resource loadCold(FileEntity file, IoClass ioClass) {
+        Path filePath = Paths.get(file.getFilePath());
+        if (!Files.exists(filePath)) {
+            throw new ResourceNotFoundException("File not found: " + file.getFileName());
+        }
+        eventPublisher.publishEvent(new ColdFileReadEvent(file.getId()));
+        return new ColdFileResource(filePath, file.getFileName(), file.getFileSize(),
+                inputStream -> tracer.traceStream("storage.read.cold", schedule(inputStream, ioClass)));
+    }
+
+    private InputStream schedule(InputStream inputStream, IoClass ioClass) {
+        return ioClass != null ? ioScheduler.schedule(inputStream, ioClass) : inputStream;
+    }
+
+    public InputStream openStream(FileEntity file) throws IOException {
+        return load(file).getInputStream();
+    }
+
+    public InputStream openStream(FileEntity file, IoClass ioClass) throws IOException {
+        return load(file, ioClass).getInputStream();
+    }
+
+    // Reads one specific copy, for checks that must cover every replica
+    public InputStream openCopy(String location) throws IOException {
+        if (PackStore.isPacked(location)) {
+            long needleId = PackStore.needleId(location);
+            PackStore.Needle needle = packStore.locate(needleId);
+            FileEncryption.EncryptedFile encrypted = fileEncryption.open(needle.path(), needle.offset(), needle.length());
+            return encrypted != null ? encrypted.newInputStream() : new ByteArrayInputStream(packStore.read(needleId));
+        }
+        Path copy = Paths.get(location);
+        if (coldTier.contains(location)) {
+            return coldTier.open(copy);
+        }
+        FileEncryption.EncryptedFile encrypted = fileEncryption.open(copy);
+        return encrypted != null ? encrypted.newInputStream() : Files.newInputStream(copy);
+    }
+
+    // Copies a stored file byte for byte (encrypted files stay encrypted) onto another volume under
+    // the same name and returns the new path. Used by the rebalancer, which paces it.
+    public Path copyToVolume(Path source, StoragePool.Volume target, ByteRateLimiter rateLimiter) throws IOException, InterruptedException {
+        Path filePath = target.getRoot().resolve(source.getFileName());
+        Path tempPath = target.getRoot().resolve(source.getFileName() + TEMP_SUFFIX);
+        if (Files.exists(filePath)) {
+            // Committing would replace a copy other files may already point to
+            throw new FileAlreadyExistsException(filePath.toString());
+        }
+        StoragePool.Volume origin = storagePool.volumeOf(source);
+        if (origin != null) {
+            origin.begin();
+        }
+        target.begin();
+        try {
+            try (InputStream input = Files.newInputStream(source);
+                 OutputStream output = Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    rateLimiter.acquire(read);
+                    output.write(buffer, 0, read);
+                }
+            }
+            commitCoordinator.commit(tempPath, filePath);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        } finally {
+            target.end();
+            if (origin != null) {
+                origin.end();
+            }
+        }
+        return filePath;
+    }
+
+    // Compresses a hot file into the cold tier and returns the new path. The hot copies stay until the
+    // caller has switched the row over. The checksum is verified on the way, a damaged file stays hot.
+    public Path copyToColdTier(FileEntity file, ByteRateLimiter rateLimiter) throws IOException, InterruptedException {
+        Path source = storagePool.selectReplica(copiesOf(file));
+        if (source == null) {
+            throw new NoSuchFileException(file.getFilePath());
+        }
+        StoragePool.Volume volume = storagePool.volumeOf(source);
+        MessageDigest digest = newDigest();
+        Path coldPath;
+        InputStream plaintext = openCopy(source.toString());
+        try (InputStream input = new DigestInputStream(volume != null ? volume.track(plaintext) : plaintext, digest)) {
+            coldPath = coldTier.write(input, source.getFileName().toString(), rateLimiter);
+        }
+        if (file.getChecksum() != null && !file.getChecksum().equals(HexFormat.of().formatHex(digest.digest()))) {
+            Files.deleteIfExists(coldPath);
+            throw new IOException("Checksum mismatch for file " + file.getId() + ", it stays on the hot tier");
+        }
+        return coldPath;
+    }
+
+    // Used to roll back stored bytes when the metadata insert fails
+    public boolean delete(FileEntity file) throws IOException {
+        boolean deleted = false;
+        for (String location : locationsOf(file)) {
+            deleted |= deleteCopy(location);
+        }
+        return deleted;
+    }
+
+    // Removes one stored copy. Copies can be shared, callers make sure no other file refers to it.
+    public boolean deleteCopy(String location) throws IOException {
+        if (PackStore.isPacked(location)) {
+            return packStore.delete(PackStore.needleId(location));
+        }
+        return Files.deleteIfExists(Paths.get(location));
+    }
+
+    // Every stored copy: paths, or the needle of a packed file
+    public static List<String> locationsOf(FileEntity file) {
+        if (file.getReplicaPath() == null) {
+            return List.of(file.getFilePath());
+        }
+        return List.of(file.getFilePath(), file.getReplicaPath());
+    }
+
+    // Copies kept as files of their own; empty for packed files
+    public static List<Path> copiesOf(FileEntity file) {
+        if (PackStore.isPacked(file.getFilePath())) {
+            return List.of();
+        }
+        return locationsOf(file).stream().map(Paths::get).toList();
+    }
+
+    private OutputStream openOutput(List<Path> tempPaths) throws IOException {
+        List<OutputStream> outputs = new ArrayList<>(tempPaths.size());
+        try {
+            for (Path tempPath : tempPaths) {
+                outputs.add(Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW));
+            }
+        } catch (IOException e) {
+            new ReplicatingOutputStream(outputs).close();
+            throw e;
+        }
+        OutputStream sink = outputs.size() == 1 ? outputs.get(0) : new ReplicatingOutputStream(outputs);
+        return fileEncryption.isEnabled() ? fileEncryption.encrypt(sink) : sink;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(CHECKSUM_ALGORITHM + " is not available", e);
+        }
+    }
+
+    // Counts its streams as operations on the volume, so reads steer placement and replica choice,
+    // and traces them. It stays a file resource, the reactive controller still reads it through a file channel.
+    // Served under the upload name, however the file is stored.
+    private static class DecoratedFileResource extends FileSystemResource {
+        private final String filename;
+        private final UnaryOperator<InputStream> streamDecorator;
+
+        DecoratedFileResource(Path path, String filename, UnaryOperator<InputStream> streamDecorator) {
+            super(path);
+            this.filename = filename;
+            this.streamDecorator = streamDecorator;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return streamDecorator.apply(super.getInputStream());
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+    }
+
+    // A compressed cold file. Its length is the recorded file size, the compressed size on disk says nothing.
+    private class ColdFileResource extends AbstractResource {
+        private final Path path;
+        private final String filename;
+        private final long length;
+        private final UnaryOperator<InputStream> streamDecorator;
+
+        ColdFileResource(Path path, String filename, long length, UnaryOperator<InputStream> streamDecorator) {
+            this.path = path;
+            this.filename = filename;
+            this.length = length;
+            this.streamDecorator = streamDecorator;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return streamDecorator.apply(coldTier.open(path));
+        }
+
+        @Override
+        public boolean exists() {
+            return Files.exists(path);
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getDescription() {
+            return "cold file [" + path + "]";
+        }
+    }
+
+    // A packed file, small enough to be read in one positional read, which also checks the needle's CRC.
+    // The read happens on the stream's first read, so it runs inside the I/O scheduler's slot.
+    private class PackedFileResource extends AbstractResource {
+        private final long needleId;
+        private final PackStore.Needle needle;
+        private final String filename;
+        private final UnaryOperator<InputStream> streamDecorator;
+
+        PackedFileResource(long needleId, PackStore.Needle needle, String filename, UnaryOperator<InputStream> streamDecorator) {
+            this.needleId = needleId;
+            this.needle = needle;
+            this.filename = filename;
+            this.streamDecorator = streamDecorator;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return streamDecorator.apply(new NeedleInputStream(needleId));
+        }
+
+        @Override
+        public boolean exists() {
+            return packStore.contains(needleId);
+        }
+
+        @Override
+        public long contentLength() {
+            return needle.length();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return Files.getLastModifiedTime(needle.path()).toMillis();
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getDescription() {
+            return "packed file [" + PackStore.LOCATION_PREFIX + needleId + "]";
+        }
+    }
+
+    private class NeedleInputStream extends InputStream {
+        private final long needleId;
+        private ByteArrayInputStream data;
+
+        NeedleInputStream(long needleId) {
+            this.needleId = needleId;
+        }
+
+        private ByteArrayInputStream data() throws IOException {
+            if (data == null) {
+                data = new ByteArrayInputStream(packStore.read(needleId));
+            }
+            return data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return data().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return data().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return data().skip(n);
+        }
+
+        @Override
+        public int available() {
+            return data != null ? data.available() : 0;
+        }
+    }
+
+    private static class HeadCapturingInputStream extends FilterInputStream {
+        private final byte[] head = new byte[ContentSniffer.HEAD_SIZE];
+        private int headLength;
+
+        HeadCapturingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && headLength < head.length) {
+                head[headLength++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0 && headLength < head.length) {
+                int captured = Math.min(read, head.length - headLength);
+                System.arraycopy(b, off, head, headLength, captured);
+                headLength += captured;
+            }
+            return read;
+        }
+    }
+
+    private static class SizeLimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                checkLimit(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                checkLimit(read);
+            }
+            return read;
+        }
+
+        private void checkLimit(int read) {
+            count += read;
+            if (count > limit) {
+                throw new FileTooLargeException("File size exceeds limit (max " + DataSize.ofBytes(limit).toMegabytes() + "MB)");
+            }
+        }
+    }
+}
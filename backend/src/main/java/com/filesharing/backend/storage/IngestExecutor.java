@@ -0,0 +1,72 @@
+package com.filesharing.backend.storage;
+
+import com.filesharing.backend.tracing.Tracer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bounded pool that writes the files of a multi-file upload or archive import to storage in parallel.
+// When the queue is full the submitting request thread stores the file itself, which slows the
+// producer down instead of failing the request. Archive entries buffered in memory while they wait
+// for a worker are capped by a shared byte budget.
+// Deliberately not an Executor bean, which would replace Spring Boot's applicationTaskExecutor.
+@Component
+public class IngestExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore bufferBudget;
+
+    private final int bufferLimit;
+
+    private final Tracer tracer;
+
+    public IngestExecutor(
+            @Value("${file.ingest.parallelism:4}") int parallelism,
+            @Value("${file.ingest.queue-capacity:64}") int queueCapacity,
+            @Value("${file.import.buffer-limit:64MB}") DataSize bufferLimit,
+            Tracer tracer) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.bufferLimit = Math.toIntExact(bufferLimit.toBytes());
+        this.bufferBudget = new Semaphore(this.bufferLimit);
+        this.tracer = tracer;
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(tracer.wrap(task));
+    }
+
+    public int getBufferLimit() {
+        return bufferLimit;
+    }
+
+    public void acquireBuffer(int bytes) throws InterruptedException {
+        bufferBudget.acquire(bytes);
+    }
+
+    public void releaseBuffer(int bytes) {
+        bufferBudget.release(bytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
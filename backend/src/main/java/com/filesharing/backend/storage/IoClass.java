@@ -0,0 +1,8 @@
+package com.filesharing.backend.storage;
+
+// Scheduling classes of file reads. Interactive reads are small files someone is waiting to see,
+// bulk reads are large downloads and archives whose total time matters more than their first byte.
+public enum IoClass {
+    INTERACTIVE,
+    BULK
+}
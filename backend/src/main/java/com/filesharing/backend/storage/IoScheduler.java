@@ -0,0 +1,219 @@
+package com.filesharing.backend.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Orders the file reads of user requests. Streams are read in chunks and every chunk waits for one
+// of max-concurrent-reads slots. Free slots go to the class with the lowest virtual time, which
+// advances by chunk size over class weight (weighted fair queuing), so a small view waits behind at
+// most a few bulk chunks instead of behind whole archives. Each class is also bounded to its own
+// share of the slots, so bulk reads alone cannot take them all, and can be capped in bandwidth.
+@Component
+public class IoScheduler {
+
+    private final boolean enabled;
+    private final int maxConcurrentReads;
+    private final int chunkSize;
+    private final long interactiveMaxFileSize;
+
+    private final Map<IoClass, Lane> lanes = new EnumMap<>(IoClass.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private int active;
+    private int waiting;
+    private double virtualClock;
+
+    public IoScheduler(
+            @Value("${file.io.scheduler.enabled:true}") boolean enabled,
+            @Value("${file.io.max-concurrent-reads:8}") int maxConcurrentReads,
+            @Value("${file.io.chunk-size:256KB}") DataSize chunkSize,
+            @Value("${file.io.interactive.max-file-size:8MB}") DataSize interactiveMaxFileSize,
+            @Value("${file.io.interactive.weight:8}") int interactiveWeight,
+            @Value("${file.io.interactive.max-concurrent:8}") int interactiveMaxConcurrent,
+            @Value("${file.io.interactive.max-bytes-per-second:0}") DataSize interactiveMaxBytesPerSecond,
+            @Value("${file.io.bulk.weight:1}") int bulkWeight,
+            @Value("${file.io.bulk.max-concurrent:4}") int bulkMaxConcurrent,
+            @Value("${file.io.bulk.max-bytes-per-second:0}") DataSize bulkMaxBytesPerSecond,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxConcurrentReads = Math.max(1, maxConcurrentReads);
+        this.chunkSize = Math.toIntExact(Math.max(1L, chunkSize.toBytes()));
+        this.interactiveMaxFileSize = interactiveMaxFileSize.toBytes();
+        lanes.put(IoClass.INTERACTIVE, new Lane(interactiveWeight, interactiveMaxConcurrent, interactiveMaxBytesPerSecond));
+        lanes.put(IoClass.BULK, new Lane(bulkWeight, bulkMaxConcurrent, bulkMaxBytesPerSecond));
+
+        for (Map.Entry<IoClass, Lane> entry : lanes.entrySet()) {
+            String ioClass = entry.getKey().name().toLowerCase();
+            Lane lane = entry.getValue();
+            Gauge.builder("storage.io.active", lane, l -> l.active).tag("class", ioClass).register(meterRegistry);
+            Gauge.builder("storage.io.queued", lane, l -> l.queue.size()).tag("class", ioClass).register(meterRegistry);
+        }
+    }
+
+    // Class of a single-file read, by size: the file is small enough that someone is waiting on all of it
+    public IoClass classOf(long fileSize) {
+        return fileSize <= interactiveMaxFileSize ? IoClass.INTERACTIVE : IoClass.BULK;
+    }
+
+    public InputStream schedule(InputStream inputStream, IoClass ioClass) {
+        return enabled ? new ScheduledInputStream(inputStream, lanes.get(ioClass)) : inputStream;
+    }
+
+    private void acquire(Lane lane, int bytes) throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiting == 0 && active < maxConcurrentReads && lane.active < lane.maxConcurrent) {
+                grant(lane, bytes);
+                return;
+            }
+
+            // A class coming back from idle starts at the current virtual time, idling earns no credit
+            if (lane.queue.isEmpty()) {
+                lane.virtualTime = Math.max(lane.virtualTime, virtualClock);
+            }
+            Waiter waiter = new Waiter(bytes, lock.newCondition());
+            lane.queue.add(waiter);
+            waiting++;
+            dispatch();
+            try {
+                while (!waiter.granted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    release(lane);
+                } else {
+                    lane.queue.remove(waiter);
+                    waiting--;
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Lane lane) {
+        lock.lock();
+        try {
+            active--;
+            lane.active--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hands free slots to the waiting class with the lowest virtual time that is below its own bound
+    private void dispatch() {
+        while (waiting > 0 && active < maxConcurrentReads) {
+            Lane next = null;
+            for (Lane lane : lanes.values()) {
+                if (!lane.queue.isEmpty() && lane.active < lane.maxConcurrent
+                        && (next == null || lane.virtualTime < next.virtualTime)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            Waiter waiter = next.queue.poll();
+            waiting--;
+            grant(next, waiter.bytes);
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private void grant(Lane lane, int bytes) {
+        active++;
+        lane.active++;
+        virtualClock = Math.max(virtualClock, lane.virtualTime);
+        lane.virtualTime += (double) bytes / lane.weight;
+    }
+
+    private static class Lane {
+        private final int weight;
+        private final int maxConcurrent;
+        private final ByteRateLimiter rateLimiter;
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+
+        // Guarded by the scheduler's lock
+        private int active;
+        private double virtualTime;
+
+        Lane(int weight, int maxConcurrent, DataSize maxBytesPerSecond) {
+            this.weight = Math.max(1, weight);
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.rateLimiter = new ByteRateLimiter(maxBytesPerSecond.toBytes());
+        }
+    }
+
+    private static class Waiter {
+        private final int bytes;
+        private final Condition condition;
+        private boolean granted;
+
+        Waiter(int bytes, Condition condition) {
+            this.bytes = bytes;
+            this.condition = condition;
+        }
+    }
+
+    // Reads at most one chunk per slot. The bandwidth cap is paid after the slot is released,
+    // so a throttled stream does not keep a slot while it sleeps.
+    private class ScheduledInputStream extends FilterInputStream {
+        private final Lane lane;
+
+        ScheduledInputStream(InputStream in, Lane lane) {
+            super(in);
+            this.lane = lane;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int chunk = Math.min(len, chunkSize);
+            int read;
+            try {
+                acquire(lane, chunk);
+                try {
+                    read = in.read(b, off, chunk);
+                } finally {
+                    release(lane);
+                }
+                if (read > 0) {
+                    lane.rateLimiter.acquire(read);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to read");
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package com.filesharing.backend.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Packs small uploads into large append-only segment files, so a file of a few kilobytes does not
+// cost its own inode, directory entry and fsync. Every file is a needle appended to the active segment:
+//
+//   magic "FSP1", needle id (8), flags (1), data length (4), CRC32 of the data (4), data
+//
+// An in-memory index maps needle ids to (segment, offset, length) and is rebuilt by scanning the
+// segments on startup, so a read is a single positional read. Deleting sets a flag in the needle;
+// compaction copies the live needles of mostly dead segments into the active one and drops the old
+// segment. Stored files refer to their needle as "pack:<id>" instead of a path.
+//
+// The index, segment numbers and needle ids live in this process, so packing works on a single node:
+// a node with packing enabled holds an exclusive lock on the pack directory, and nodes with it disabled
+// hold a shared one, so they only start next to each other when none of them appends.
+@Component
+public class PackStore {
+
+    private static final Logger logger = Logger.getLogger(PackStore.class.getName());
+
+    public static final String LOCATION_PREFIX = "pack:";
+
+    private static final int MAGIC = 0x46535031;
+
+    static final int HEADER_LENGTH = 4 + 8 + 1 + 4 + 4;
+
+    private static final int FLAGS_OFFSET = 12;
+
+    private static final byte FLAG_DELETED = 1;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    private static final String LOCK_FILE = "pack.lock";
+
+    // A reader that loses a race with compaction looks the needle up again
+    private static final int READ_ATTEMPTS = 3;
+
+    // Turning packing off only stops new uploads from being packed, packed files stay readable
+    @Value("${file.pack.enabled:true}")
+    private boolean enabled;
+
+    // Uploads up to this size are packed, larger ones get a file of their own
+    @Value("${file.pack.threshold:64KB}")
+    private DataSize threshold;
+
+    // Dot-prefixed so the integrity scrubber treats segments as bookkeeping, not orphans
+    @Value("${file.pack.dir:${file.upload-dir}/.packs}")
+    private String packDir;
+
+    @Value("${file.pack.segment-size:1GB}")
+    private DataSize segmentSize;
+
+    // Sealed segments with at least this fraction of deleted bytes are compacted
+    @Value("${file.pack.compaction-threshold:0.5}")
+    private double compactionThreshold;
+
+    // Compacted segments stay readable this long for downloads that located a needle just before
+    @Value("${file.pack.compaction-delete-delay:PT5M}")
+    private Duration deleteDelay;
+
+    @Autowired
+    private CommitCoordinator commitCoordinator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // Compacted segments waiting for deletion, with the time they may go
+    private final Map<Segment, Instant> retired = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextNeedleId = new AtomicLong(1);
+
+    private final Object appendLock = new Object();
+
+    private volatile Segment active;
+
+    private Path directory;
+
+    private FileChannel lockChannel;
+
+    private Counter compactedBytes;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(packDir).toAbsolutePath().normalize();
+        // Created and locked even with packing disabled, so a node that enables it later cannot start alongside
+        Files.createDirectories(directory);
+        lock();
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> segmentNumber(path) > 0)
+                    .sorted((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)))
+                    .toList();
+        }
+        // Later segments win, so a needle copied by an interrupted compaction resolves to its copy
+        for (Path file : files) {
+            Segment segment = new Segment(segmentNumber(file), file,
+                    FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(segment.number, segment);
+            scan(segment);
+        }
+        if (enabled) {
+            synchronized (appendLock) {
+                active = segments.isEmpty() || segments.lastEntry().getValue().size.get() >= segmentSize.toBytes()
+                        ? roll()
+                        : segments.lastEntry().getValue();
+            }
+        }
+        logger.info("Pack store opened " + segments.size() + " segment(s) holding " + index.size() + " files");
+
+        Gauge.builder("pack.segments", segments, Map::size).register(meterRegistry);
+        Gauge.builder("pack.files", index, Map::size).register(meterRegistry);
+        Gauge.builder("pack.bytes.dead", this, PackStore::deadBytes).baseUnit("bytes").register(meterRegistry);
+        compactedBytes = meterRegistry.counter("pack.compaction.bytes");
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Segment segment : segments.values()) {
+            closeQuietly(segment);
+        }
+        // Nothing reads compacted segments once the node stops, so they do not wait for the delete delay
+        for (Segment segment : retired.keySet()) {
+            closeQuietly(segment);
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.warning("Could not delete compacted pack segment " + segment.path + ": " + e.getMessage());
+            }
+        }
+        if (lockChannel != null) {
+            try {
+                // Closing the channel releases the lock
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.fine("Could not release the pack directory lock: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getThreshold() {
+        return threshold.toBytes();
+    }
+
+    public static boolean isPacked(String location) {
+        return location != null && location.startsWith(LOCATION_PREFIX);
+    }
+
+    public static long needleId(String location) {
+        return Long.parseLong(location.substring(LOCATION_PREFIX.length()));
+    }
+
+    // Appends the data as a new needle and returns its location once it is as durable as
+    // file.durability.mode promises for regular files
+    public String append(byte[] data) throws IOException {
+        long needleId = nextNeedleId.getAndIncrement();
+        index.put(needleId, write(needleId, data));
+        return LOCATION_PREFIX + needleId;
+    }
+
+    public boolean contains(long needleId) {
+        return index.containsKey(needleId);
+    }
+
+    // Where the needle's data currently sits, for readers that stream it straight from the segment
+    public Needle locate(long needleId) throws NoSuchFileException {
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            Location location = index.get(needleId);
+            if (location == null) {
+                break;
+            }
+            Segment segment = segments.get(location.segment());
+            if (segment != null) {
+                return new Needle(segment.path, location.offset() + HEADER_LENGTH, location.length());
+            }
+        }
+        throw new NoSuchFileException(LOCATION_PREFIX + needleId);
+    }
+
+    // Reads the needle's data with one positional read and checks it against its CRC
+    public byte[] read(long needleId) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Location location = index.get(needleId);
+            if (location == null) {
+                throw new NoSuchFileException(LOCATION_PREFIX + needleId);
+            }
+            Segment segment = segments.get(location.segment());
+            try {
+                if (segment != null) {
+                    return readData(segment, location.offset(), needleId);
+                }
+            } catch (ClosedChannelException e) {
+                if (attempt >= READ_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            if (attempt >= READ_ATTEMPTS) {
+                throw new NoSuchFileException(LOCATION_PREFIX + needleId);
+            }
+        }
+    }
+
+    // Marks the needle deleted. The flag is not synced: if a crash loses it, the bytes simply stay
+    // until the needle is deleted again.
+    public boolean delete(long needleId) throws IOException {
+        Location location = index.remove(needleId);
+        if (location == null) {
+            return false;
+        }
+        Segment segment = segments.get(location.segment());
+        if (segment != null) {
+            markDeleted(segment, location);
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${file.pack.compaction-interval:PT10M}", initialDelayString = "${file.pack.compaction-initial-delay:PT10M}")
+    public void scheduledCompaction() {
+        compact();
+    }
+
+    // Rewrites every sealed segment that is dead enough; returns how many were compacted
+    public int compact() {
+        deleteRetiredSegments();
+        if (active == null) {
+            return 0;
+        }
+
+        int compacted = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            long size = segment.size.get();
+            if (segment == active || size == 0 || (double) segment.deadBytes.get() / size < compactionThreshold) {
+                continue;
+            }
+            try {
+                compact(segment);
+                compacted++;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not compact pack segment " + segment.path, e);
+            }
+        }
+        return compacted;
+    }
+
+    private void compact(Segment segment) throws IOException {
+        long moved = 0;
+        long position = 0;
+        long end = segment.size.get();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (position < end) {
+            readFully(segment.channel, header.clear(), position);
+            header.flip();
+            header.getInt();
+            long needleId = header.getLong();
+            header.get();
+            int length = header.getInt();
+
+            Location location = new Location(segment.number, position, length);
+            if (location.equals(index.get(needleId))) {
+                byte[] data = readData(segment, position, needleId);
+                Location copy = write(needleId, data);
+                // A delete that slipped in while copying removed the old location; the copy is dead too
+                if (!index.replace(needleId, location, copy)) {
+                    markDeleted(segments.get(copy.segment()), copy);
+                }
+                moved += HEADER_LENGTH + length;
+            }
+            position += HEADER_LENGTH + length;
+        }
+
+        segments.remove(segment.number);
+        retired.put(segment, Instant.now().plus(deleteDelay));
+        compactedBytes.increment(end - moved);
+        logger.info("Compacted pack segment " + segment.path.getFileName() + ": kept " + moved
+                + " bytes, reclaimed " + (end - moved));
+    }
+
+    private void deleteRetiredSegments() {
+        Instant now = Instant.now();
+        Iterator<Map.Entry<Segment, Instant>> iterator = retired.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Segment, Instant> entry = iterator.next();
+            if (entry.getValue().isAfter(now)) {
+                continue;
+            }
+            Segment segment = entry.getKey();
+            closeQuietly(segment);
+            try {
+                Files.deleteIfExists(segment.path);
+                iterator.remove();
+            } catch (IOException e) {
+                logger.warning("Could not delete compacted pack segment " + segment.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Another node appending would pick the same segment numbers and needle ids, and its needles would
+    // be missing from this node's index
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock(0, Long.MAX_VALUE, !enabled);
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException(enabled
+                    ? "Pack directory " + directory + " is in use by another process. Packing works on a single node: "
+                            + "set file.pack.enabled=false on every node sharing the upload directory"
+                    : "Pack directory " + directory + " is being written by another process with file.pack.enabled=true. "
+                            + "Packing works on a single node: disable it on every node sharing the upload directory");
+        }
+    }
+
+    // Rebuilds the index from one segment. A needle cut short by a crash ends the segment; it was
+    // never acknowledged, so the tail is truncated and the next append overwrites it.
+    private void scan(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (position + HEADER_LENGTH <= fileSize) {
+            readFully(segment.channel, header.clear(), position);
+            header.flip();
+            int magic = header.getInt();
+            long needleId = header.getLong();
+            byte flags = header.get();
+            int length = header.getInt();
+            if (magic != MAGIC || length < 0 || position + HEADER_LENGTH + length > fileSize) {
+                break;
+            }
+
+            nextNeedleId.accumulateAndGet(needleId + 1, Math::max);
+            if ((flags & FLAG_DELETED) != 0) {
+                segment.deadBytes.addAndGet(HEADER_LENGTH + length);
+                // A needle deleted after compaction copied it: the copy in the older segment is dead too,
+                // or it would come back and be copied forward again
+                Location previous = index.remove(needleId);
+                if (previous != null) {
+                    segments.get(previous.segment()).deadBytes.addAndGet(HEADER_LENGTH + previous.length());
+                }
+            } else {
+                Location previous = index.put(needleId, new Location(segment.number, position, length));
+                if (previous != null) {
+                    segments.get(previous.segment()).deadBytes.addAndGet(HEADER_LENGTH + previous.length());
+                }
+            }
+            position += HEADER_LENGTH + length;
+        }
+
+        if (position < fileSize) {
+            logger.warning("Truncating " + (fileSize - position) + " unreadable bytes at the end of pack segment " + segment.path);
+            segment.channel.truncate(position);
+        }
+        segment.size.set(position);
+        segment.syncedTo = position;
+    }
+
+    private Location write(long needleId, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer needle = ByteBuffer.allocate(HEADER_LENGTH + data.length);
+        needle.putInt(MAGIC).putLong(needleId).put((byte) 0).putInt(data.length).putInt((int) crc.getValue()).put(data);
+        needle.flip();
+
+        Segment segment;
+        long position;
+        synchronized (appendLock) {
+            segment = active;
+            if (segment.size.get() > 0 && segment.size.get() + needle.remaining() > segmentSize.toBytes()) {
+                segment = roll();
+            }
+            position = segment.size.get();
+            // A failed write leaves the size alone, so the next needle overwrites the partial one
+            while (needle.hasRemaining()) {
+                segment.channel.write(needle, position + needle.position());
+            }
+            segment.size.set(position + needle.limit());
+        }
+        sync(segment, position + needle.limit());
+        return new Location(segment.number, position, data.length);
+    }
+
+    // Concurrent appenders share one fsync: whoever gets the lock first syncs everything written so
+    // far, the others find their needle already covered
+    private void sync(Segment segment, long end) throws IOException {
+        if (commitCoordinator.getMode() == DurabilityMode.NONE) {
+            return;
+        }
+        synchronized (segment.syncLock) {
+            if (segment.syncedTo >= end) {
+                return;
+            }
+            long target = segment.size.get();
+            segment.channel.force(false);
+            segment.syncedTo = target;
+        }
+    }
+
+    private Segment roll() throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        Segment segment = new Segment(number, path,
+                FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        if (commitCoordinator.getMode() != DurabilityMode.NONE) {
+            CommitCoordinator.forceDirectory(directory);
+        }
+        segments.put(number, segment);
+        active = segment;
+        return segment;
+    }
+
+    private byte[] readData(Segment segment, long position, long needleId) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(segment.channel, header, position);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getLong() != needleId) {
+            throw new IOException("Pack segment " + segment.path.getFileName() + " has no needle " + needleId + " at " + position);
+        }
+        header.get();
+        int length = header.getInt();
+        int expectedCrc = header.getInt();
+
+        ByteBuffer data = ByteBuffer.allocate(length);
+        readFully(segment.channel, data, position + HEADER_LENGTH);
+        CRC32 crc = new CRC32();
+        crc.update(data.array());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Needle " + needleId + " in pack segment " + segment.path.getFileName() + " is corrupt");
+        }
+        return data.array();
+    }
+
+    private void markDeleted(Segment segment, Location location) throws IOException {
+        segment.channel.write(ByteBuffer.wrap(new byte[] {FLAG_DELETED}), location.offset() + FLAGS_OFFSET);
+        segment.deadBytes.addAndGet(HEADER_LENGTH + location.length());
+    }
+
+    private long deadBytes() {
+        long dead = 0;
+        for (Segment segment : segments.values()) {
+            dead += segment.deadBytes.get();
+        }
+        return dead;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Pack segment ends at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            logger.fine("Could not close pack segment " + segment.path + ": " + e.getMessage());
+        }
+    }
+
+    // A needle's data inside its segment file
+    public record Needle(Path path, long offset, int length) {
+    }
+
+    private record Location(int segment, long offset, int length) {
+    }
+
+    private static class Segment {
+        private final int number;
+        private final Path path;
+        private final FileChannel channel;
+        // End of the last complete needle, where the next one is appended
+        private final AtomicLong size = new AtomicLong();
+        private final AtomicLong deadBytes = new AtomicLong();
+        private final Object syncLock = new Object();
+        private long syncedTo;
+
+        Segment(int number, Path path, FileChannel channel) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.filesharing.backend.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// Writes the same bytes to every replica, so replicated uploads are still read and hashed once
+class ReplicatingOutputStream extends OutputStream {
+
+    private final List<OutputStream> targets;
+
+    ReplicatingOutputStream(List<OutputStream> targets) {
+        this.targets = targets;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for (OutputStream target : targets) {
+            target.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (OutputStream target : targets) {
+            target.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (OutputStream target : targets) {
+            target.flush();
+        }
+    }
+
+    // Every target is closed even if an earlier one fails
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (OutputStream target : targets) {
+            try {
+                target.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.filesharing.backend.storage;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+// Decrypts one segment at a time. skip() only moves the position, so a range read starting deep
+// into a file decrypts nothing before the segment that holds its first byte.
+class SegmentDecryptingInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    // Where the encrypted blob starts in the channel, non-zero for blobs inside a pack segment
+    private final long baseOffset;
+
+    private final SecretKey dataKey;
+
+    private final byte[] noncePrefix;
+
+    private final int segmentLength;
+
+    private final long segmentCount;
+
+    private final long plaintextLength;
+
+    private final Cipher cipher;
+
+    private final ByteBuffer sealed;
+
+    private final byte[] plaintext;
+
+    private final byte[] single = new byte[1];
+
+    // Index of the segment held in plaintext, -1 if none
+    private long loadedSegment = -1;
+
+    private int loadedLength;
+
+    private long position;
+
+    SegmentDecryptingInputStream(FileChannel channel, long baseOffset, SecretKey dataKey, byte[] noncePrefix,
+                                 int segmentLength, long segmentCount, long plaintextLength) throws IOException {
+        this.channel = channel;
+        this.baseOffset = baseOffset;
+        this.dataKey = dataKey;
+        this.noncePrefix = noncePrefix;
+        this.segmentLength = segmentLength;
+        this.segmentCount = segmentCount;
+        this.plaintextLength = plaintextLength;
+        this.sealed = ByteBuffer.allocate(segmentLength + FileEncryption.TAG_LENGTH);
+        this.plaintext = new byte[segmentLength];
+        try {
+            this.cipher = Cipher.getInstance(FileEncryption.CIPHER);
+        } catch (GeneralSecurityException e) {
+            channel.close();
+            throw new IOException("AES-GCM is not available", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= plaintextLength) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        long segment = position / segmentLength;
+        if (segment != loadedSegment) {
+            load(segment);
+        }
+        int offsetInSegment = (int) (position - segment * segmentLength);
+        int count = Math.min(len, loadedLength - offsetInSegment);
+        System.arraycopy(plaintext, offsetInSegment, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, plaintextLength - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long segment = position / segmentLength;
+        return segment == loadedSegment ? (int) (loadedLength - (position - segment * segmentLength)) : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void load(long segment) throws IOException {
+        boolean last = segment == segmentCount - 1;
+        long sealedSegment = (long) segmentLength + FileEncryption.TAG_LENGTH;
+        long offset = baseOffset + FileEncryption.HEADER_LENGTH + segment * sealedSegment;
+
+        sealed.clear();
+        if (last) {
+            sealed.limit((int) (plaintextLength - segment * segmentLength + FileEncryption.TAG_LENGTH));
+        }
+        while (sealed.hasRemaining()) {
+            if (channel.read(sealed, offset + sealed.position()) < 0) {
+                throw new IOException("Encrypted file ends inside segment " + segment);
+            }
+        }
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, dataKey,
+                    new GCMParameterSpec(FileEncryption.TAG_LENGTH * 8, FileEncryption.segmentNonce(noncePrefix, segment)));
+            cipher.updateAAD(FileEncryption.segmentAad(last));
+            loadedLength = cipher.doFinal(sealed.array(), 0, sealed.limit(), plaintext, 0);
+            loadedSegment = segment;
+        } catch (AEADBadTagException e) {
+            loadedSegment = -1;
+            throw new IOException("Segment " + segment + " of an encrypted file failed authentication", e);
+        } catch (GeneralSecurityException e) {
+            loadedSegment = -1;
+            throw new IOException("Could not decrypt segment " + segment, e);
+        }
+    }
+}
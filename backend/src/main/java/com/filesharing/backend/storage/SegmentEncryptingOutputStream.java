@@ -0,0 +1,99 @@
+package com.filesharing.backend.storage;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+// Seals plaintext in segments of a fixed size. A full segment is only written once more bytes
+// arrive, because whether it is the last one is part of its authenticated data.
+class SegmentEncryptingOutputStream extends OutputStream {
+
+    private final OutputStream target;
+
+    private final SecretKey dataKey;
+
+    private final byte[] noncePrefix;
+
+    private final byte[] plaintext;
+
+    private final byte[] sealed;
+
+    private final Cipher cipher;
+
+    private final byte[] single = new byte[1];
+
+    private int buffered;
+
+    private long segmentIndex;
+
+    private boolean closed;
+
+    SegmentEncryptingOutputStream(OutputStream target, SecretKey dataKey, byte[] noncePrefix, int segmentLength) throws IOException {
+        this.target = target;
+        this.dataKey = dataKey;
+        this.noncePrefix = noncePrefix;
+        this.plaintext = new byte[segmentLength];
+        this.sealed = new byte[segmentLength + FileEncryption.TAG_LENGTH];
+        try {
+            this.cipher = Cipher.getInstance(FileEncryption.CIPHER);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM is not available", e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffered == plaintext.length) {
+                seal(false);
+            }
+            int count = Math.min(len, plaintext.length - buffered);
+            System.arraycopy(b, off, plaintext, buffered, count);
+            buffered += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    // Plaintext is only released as whole segments, so flushing just passes through
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            seal(true);
+        } finally {
+            target.close();
+        }
+    }
+
+    private void seal(boolean last) throws IOException {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey,
+                    new GCMParameterSpec(FileEncryption.TAG_LENGTH * 8, FileEncryption.segmentNonce(noncePrefix, segmentIndex)));
+            cipher.updateAAD(FileEncryption.segmentAad(last));
+            int length = cipher.doFinal(plaintext, 0, buffered, sealed, 0);
+            target.write(sealed, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not encrypt segment " + segmentIndex, e);
+        }
+        segmentIndex++;
+        buffered = 0;
+    }
+}
@@ -0,0 +1,227 @@
+package com.filesharing.backend.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// The local volumes uploads are spread over. file.upload-dir is always the first volume and keeps
+// holding bookkeeping such as the archive cache; file.storage.volumes adds further mount points.
+@Component
+public class StoragePool {
+
+    private static final Logger logger = Logger.getLogger(StoragePool.class.getName());
+
+    // Free space is re-read at most this often, statfs on every upload is not free on network mounts
+    private static final long SPACE_REFRESH_NANOS = 1_000_000_000L;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${file.storage.volumes:}")
+    private List<String> extraVolumes;
+
+    @Value("${file.storage.replication-factor:1}")
+    private int replicationFactor;
+
+    // Volumes with less free space than this take no new files
+    @Value("${file.storage.min-free-space:1GB}")
+    private DataSize minFreeSpace;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private List<Volume> volumes;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Set<Path> roots = new LinkedHashSet<>();
+        roots.add(Paths.get(uploadDir).toAbsolutePath().normalize());
+        for (String volume : extraVolumes) {
+            if (!volume.isBlank()) {
+                roots.add(Paths.get(volume.trim()).toAbsolutePath().normalize());
+            }
+        }
+
+        List<Volume> initialized = new ArrayList<>(roots.size());
+        for (Path root : roots) {
+            Files.createDirectories(root);
+            Volume volume = new Volume(root);
+            initialized.add(volume);
+
+            Gauge.builder("storage.volume.free", volume, Volume::usableSpace)
+                    .tag("volume", root.toString())
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("storage.volume.active", volume, v -> v.activeOps.get())
+                    .tag("volume", root.toString())
+                    .register(meterRegistry);
+        }
+        volumes = Collections.unmodifiableList(initialized);
+
+        if (replicationFactor > volumes.size()) {
+            logger.warning("file.storage.replication-factor=" + replicationFactor + " but only "
+                    + volumes.size() + " volume(s) configured, files get one copy per volume");
+        }
+    }
+
+    public List<Volume> getVolumes() {
+        return volumes;
+    }
+
+    // Copies each new file actually gets, capped by the number of volumes
+    public int getReplicationFactor() {
+        return Math.min(Math.max(1, replicationFactor), volumes.size());
+    }
+
+    // Picks the volumes a new file is written to, best first. A volume scores its free space divided
+    // by the operations currently running on it, so an idle disk wins over a slightly emptier busy one.
+    // Replicas always land on distinct volumes.
+    public List<Volume> place() throws IOException {
+        long reserve = minFreeSpace.toBytes();
+        List<Volume> candidates = new ArrayList<>(volumes.size());
+        for (Volume volume : volumes) {
+            if (volume.usableSpace() > reserve) {
+                candidates.add(volume);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IOException("No storage volume has more than " + minFreeSpace.toMegabytes() + "MB free");
+        }
+
+        candidates.sort(Comparator.comparingDouble(Volume::placementScore).reversed());
+        return candidates.subList(0, Math.min(getReplicationFactor(), candidates.size()));
+    }
+
+    // Volume holding the given path; unknown paths (e.g. from a removed volume) map to null
+    public Volume volumeOf(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        Volume match = null;
+        for (Volume volume : volumes) {
+            if (normalized.startsWith(volume.root)
+                    && (match == null || volume.root.getNameCount() > match.root.getNameCount())) {
+                match = volume;
+            }
+        }
+        return match;
+    }
+
+    // Of the copies that exist, the one on the volume with the fewest running operations
+    public Path selectReplica(List<Path> copies) {
+        Path best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Path copy : copies) {
+            if (!Files.exists(copy)) {
+                continue;
+            }
+            Volume volume = volumeOf(copy);
+            int load = volume != null ? volume.activeOps.get() : 0;
+            if (load < bestLoad) {
+                best = copy;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    public static class Volume {
+        private final Path root;
+        private final AtomicInteger activeOps = new AtomicInteger();
+
+        private volatile long cachedUsableSpace;
+        private volatile long cachedTotalSpace;
+        private volatile long refreshedAt = System.nanoTime() - SPACE_REFRESH_NANOS;
+
+        Volume(Path root) {
+            this.root = root;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        public int getActiveOps() {
+            return activeOps.get();
+        }
+
+        public long usableSpace() {
+            refresh();
+            return cachedUsableSpace;
+        }
+
+        public long totalSpace() {
+            refresh();
+            return cachedTotalSpace;
+        }
+
+        // Fraction of the volume in use, what the rebalancer levels out
+        public double usedRatio() {
+            refresh();
+            return cachedTotalSpace > 0 ? 1.0 - (double) cachedUsableSpace / cachedTotalSpace : 0.0;
+        }
+
+        public void begin() {
+            activeOps.incrementAndGet();
+        }
+
+        public void end() {
+            activeOps.decrementAndGet();
+        }
+
+        public InputStream track(InputStream inputStream) {
+            begin();
+            return new FilterInputStream(inputStream) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        end();
+                    }
+                    super.close();
+                }
+            };
+        }
+
+        private double placementScore() {
+            return (double) usableSpace() / (1 + activeOps.get());
+        }
+
+        private void refresh() {
+            long now = System.nanoTime();
+            if (now - refreshedAt < SPACE_REFRESH_NANOS) {
+                return;
+            }
+            refreshedAt = now;
+            try {
+                FileStore store = Files.getFileStore(root);
+                cachedUsableSpace = store.getUsableSpace();
+                cachedTotalSpace = store.getTotalSpace();
+            } catch (IOException e) {
+                // An unreachable mount takes no new files until it answers again
+                cachedUsableSpace = 0L;
+                logger.warning("Could not read free space of " + root + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.filesharing.backend.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Result of writing an upload to storage
+@Getter
+@AllArgsConstructor
+public class StoredFile {
+    private final String filePath;
+    // Second copy on another volume, null unless replication is enabled
+    private final String replicaPath;
+    private final long fileSize;
+    private final String checksum;
+    // Type recognized from the leading bytes, null if unknown
+    private final String detectedType;
+}
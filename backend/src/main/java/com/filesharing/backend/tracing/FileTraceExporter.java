@@ -0,0 +1,96 @@
+package com.filesharing.backend.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Appends exported traces to a local file, one JSON object per line, on a background thread.
+// When the file reaches max-size it is moved to <file>.1 and a new one is started.
+// Traces that arrive while the queue is full are only kept in the ring buffer.
+@Component
+@ConditionalOnProperty(name = "tracing.exporter", havingValue = "file")
+public class FileTraceExporter extends RingBufferTraceExporter {
+
+    private static final Logger logger = Logger.getLogger(FileTraceExporter.class.getName());
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    @Value("${tracing.file:./logs/traces.jsonl}")
+    private String file;
+
+    @Value("${tracing.file-max-size:100MB}")
+    private DataSize maxSize;
+
+    @Value("${tracing.file-queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private BlockingQueue<Trace> queue;
+
+    private Thread writer;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::writeLoop, "trace-exporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        writer.interrupt();
+    }
+
+    @Override
+    public void export(Trace trace) {
+        super.export(trace);
+        queue.offer(trace);
+    }
+
+    private void writeLoop() {
+        Path path = Paths.get(file);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Trace trace = queue.take();
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                if (Files.exists(path) && Files.size(path) >= maxSize.toBytes()) {
+                    Files.move(path, path.resolveSibling(path.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+                }
+                try (OutputStream output = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    output.write(objectMapper.writeValueAsBytes(trace.toExportFormat()));
+                    output.write(NEWLINE);
+                    // Whatever else is queued goes out with the same open
+                    Trace next;
+                    while ((next = queue.poll()) != null) {
+                        output.write(objectMapper.writeValueAsBytes(next.toExportFormat()));
+                        output.write(NEWLINE);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Could not write traces to " + path, e);
+            }
+        }
+    }
+}
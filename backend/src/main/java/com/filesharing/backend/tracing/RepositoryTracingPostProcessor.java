@@ -0,0 +1,40 @@
+package com.filesharing.backend.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+// Adds a span around every Spring Data repository call ("db FileRepository.findAllById"), including
+// the custom JDBC fragments, by hooking into the repository proxies rather than pulling in AspectJ
+@Component
+public class RepositoryTracingPostProcessor implements BeanPostProcessor {
+
+    // Looked up lazily, post-processors are created before the beans the tracer depends on
+    private final ObjectProvider<Tracer> tracer;
+
+    public RepositoryTracingPostProcessor(ObjectProvider<Tracer> tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> {
+                        String repository = repositoryInformation.getRepositoryInterface().getSimpleName();
+                        proxyFactory.addAdvice(tracingInterceptor(repository));
+                    }));
+        }
+        return bean;
+    }
+
+    private MethodInterceptor tracingInterceptor(String repository) {
+        return invocation -> {
+            try (Span span = tracer.getObject().startSpan("db " + repository + "." + invocation.getMethod().getName())) {
+                return invocation.proceed();
+            }
+        };
+    }
+}
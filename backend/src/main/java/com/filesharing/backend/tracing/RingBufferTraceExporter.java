@@ -0,0 +1,38 @@
+package com.filesharing.backend.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Keeps the last traces in memory, readable at /actuator/traces. Also the base of the file exporter.
+@Component
+@ConditionalOnProperty(name = "tracing.exporter", havingValue = "memory", matchIfMissing = true)
+public class RingBufferTraceExporter implements TraceExporter {
+
+    private final Deque<Trace> buffer = new ArrayDeque<>();
+
+    @Value("${tracing.ring-buffer-size:200}")
+    private int capacity;
+
+    @Override
+    public void export(Trace trace) {
+        synchronized (buffer) {
+            if (buffer.size() >= capacity) {
+                buffer.pollLast();
+            }
+            buffer.addFirst(trace);
+        }
+    }
+
+    @Override
+    public List<Trace> recent() {
+        synchronized (buffer) {
+            return new ArrayList<>(buffer);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.filesharing.backend.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One timed operation within a request. Spans started with Tracer.startSpan are active on their
+// thread until closed; closing re-activates the span that was active before.
+public class Span implements AutoCloseable {
+
+    // Handed out when no request is being traced, e.g. to scheduled jobs
+    static final Span NOOP = new Span(null, "noop", null, null, null);
+
+    private final Trace trace;
+    private final String name;
+    private final String spanId;
+    private final String parentSpanId;
+    private final Span previous;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private long durationNanos = -1L;
+
+    Span(Trace trace, String name, String spanId, String parentSpanId, Span previous) {
+        this.trace = trace;
+        this.name = name;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.previous = previous;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    Trace getTrace() {
+        return trace;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    public synchronized long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public synchronized Map<String, Object> getAttributes() {
+        return new LinkedHashMap<>(attributes);
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (trace != null) {
+            synchronized (this) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    // For totals collected from several threads, such as time spent in reads
+    public void addToAttribute(String key, long delta) {
+        if (trace != null) {
+            synchronized (this) {
+                attributes.merge(key, delta, (a, b) -> (Long) a + (Long) b);
+            }
+        }
+    }
+
+    // Ends the span without touching the active span of the calling thread, so it can run anywhere
+    public void end() {
+        if (trace == null) {
+            return;
+        }
+        synchronized (this) {
+            if (durationNanos >= 0) {
+                return;
+            }
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        trace.spanEnded(this);
+    }
+
+    @Override
+    public void close() {
+        end();
+        detach();
+    }
+
+    // Deactivates the span on this thread while it keeps running, e.g. when a request goes async
+    public void detach() {
+        if (Tracer.CURRENT.get() == this) {
+            Tracer.restore(previous);
+        }
+    }
+}
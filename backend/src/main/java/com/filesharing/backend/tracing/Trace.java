@@ -0,0 +1,145 @@
+package com.filesharing.backend.tracing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// All spans of one request. The span count is capped, a batch download of thousands of files
+// would otherwise keep every read span in memory until the request ends.
+public class Trace {
+
+    private final Tracer tracer;
+    private final String traceId;
+    private final boolean sampled;
+    private final int maxSpans;
+    private final long startEpochNanos = System.currentTimeMillis() * 1_000_000L;
+    private final List<Span> spans = new ArrayList<>();
+    private Span root;
+    private int droppedSpans;
+
+    Trace(Tracer tracer, String traceId, boolean sampled, int maxSpans) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.sampled = sampled;
+        this.maxSpans = maxSpans;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public Span getRoot() {
+        return root;
+    }
+
+    void setRoot(Span root) {
+        this.root = root;
+    }
+
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public synchronized int getDroppedSpans() {
+        return droppedSpans;
+    }
+
+    void spanEnded(Span span) {
+        synchronized (this) {
+            if (spans.size() < maxSpans || span == root) {
+                spans.add(span);
+            } else {
+                droppedSpans++;
+            }
+        }
+        if (span == root) {
+            tracer.finish(this);
+        }
+    }
+
+    // Epoch time of a span start; spans are timed with nanoTime relative to the root
+    long toEpochNanos(long nanoTime) {
+        return startEpochNanos + (nanoTime - root.getStartNanos());
+    }
+
+    // Nested view used by the slow-request log and the traces endpoint
+    public Map<String, Object> toTree() {
+        Map<String, List<Span>> children = new HashMap<>();
+        for (Span span : getSpans()) {
+            if (span != root && span.getParentSpanId() != null) {
+                children.computeIfAbsent(span.getParentSpanId(), id -> new ArrayList<>()).add(span);
+            }
+        }
+        Map<String, Object> tree = node(root, children);
+        tree.put("traceId", traceId);
+        tree.put("droppedSpans", getDroppedSpans());
+        return tree;
+    }
+
+    private Map<String, Object> node(Span span, Map<String, List<Span>> children) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("name", span.getName());
+        node.put("spanId", span.getSpanId());
+        node.put("durationMs", span.getDurationNanos() / 1_000_000.0);
+        Map<String, Object> attributes = span.getAttributes();
+        if (!attributes.isEmpty()) {
+            node.put("attributes", attributes);
+        }
+        List<Map<String, Object>> childNodes = new ArrayList<>();
+        for (Span child : children.getOrDefault(span.getSpanId(), List.of())) {
+            childNodes.add(node(child, children));
+        }
+        if (!childNodes.isEmpty()) {
+            node.put("children", childNodes);
+        }
+        return node;
+    }
+
+    public String render() {
+        StringBuilder builder = new StringBuilder();
+        render(builder, toTree(), 0);
+        return builder.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void render(StringBuilder builder, Map<String, Object> node, int depth) {
+        builder.append('\n').append("  ".repeat(depth))
+                .append(node.get("name")).append(' ')
+                .append(String.format("%.1fms", (Double) node.get("durationMs")));
+        if (node.containsKey("attributes")) {
+            builder.append(' ').append(node.get("attributes"));
+        }
+        for (Map<String, Object> child : (List<Map<String, Object>>) node.getOrDefault("children", List.of())) {
+            render(builder, child, depth + 1);
+        }
+    }
+
+    // Flat span list with OpenTelemetry field names, for the file exporter
+    public Map<String, Object> toExportFormat() {
+        List<Map<String, Object>> exported = new ArrayList<>();
+        for (Span span : getSpans()) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("traceId", traceId);
+            fields.put("spanId", span.getSpanId());
+            if (span.getParentSpanId() != null) {
+                fields.put("parentSpanId", span.getParentSpanId());
+            }
+            fields.put("name", span.getName());
+            long start = toEpochNanos(span.getStartNanos());
+            fields.put("startTimeUnixNano", start);
+            fields.put("endTimeUnixNano", start + span.getDurationNanos());
+            fields.put("attributes", span.getAttributes());
+            exported.add(fields);
+        }
+        Map<String, Object> trace = new LinkedHashMap<>();
+        trace.put("traceId", traceId);
+        trace.put("spans", exported);
+        return trace;
+    }
+}
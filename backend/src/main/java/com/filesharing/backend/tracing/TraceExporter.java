@@ -0,0 +1,12 @@
+package com.filesharing.backend.tracing;
+
+import java.util.List;
+
+// Destination of finished traces. Exporters must not block, they run on the request thread.
+public interface TraceExporter {
+
+    void export(Trace trace);
+
+    // Most recent exported traces, newest first
+    List<Trace> recent();
+}
@@ -0,0 +1,223 @@
+package com.filesharing.backend.tracing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Minimal in-process tracer. Requests are traced with W3C trace context (the traceparent header),
+// so ids line up with OpenTelemetry tooling on either side, but nothing leaves the process except
+// through the configured TraceExporter. Every request is recorded, which keeps the slow-request log
+// complete; only sampled or slow traces are exported.
+@Component
+public class Tracer {
+
+    private static final Logger logger = Logger.getLogger(Tracer.class.getName());
+
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final Pattern TRACEPARENT = Pattern.compile("^00-([0-9a-f]{32})-([0-9a-f]{16})-([0-9a-f]{2})$");
+
+    private static final String INVALID_TRACE_ID = "0".repeat(32);
+
+    static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private final double sampleRatio;
+    private final long slowThresholdNanos;
+    private final int maxSpansPerTrace;
+    private final TraceExporter exporter;
+    private final Counter slowRequests;
+
+    public Tracer(
+            @Value("${tracing.sample-ratio:0.1}") double sampleRatio,
+            @Value("${tracing.slow-request-threshold:2s}") Duration slowThreshold,
+            @Value("${tracing.max-spans-per-trace:2000}") int maxSpansPerTrace,
+            TraceExporter exporter,
+            MeterRegistry meterRegistry) {
+        this.sampleRatio = sampleRatio;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.exporter = exporter;
+        this.slowRequests = meterRegistry.counter("tracing.slow.requests");
+    }
+
+    // Starts the root span of a request and activates it, continuing the caller's trace if one is given
+    public Span startTrace(String name, String traceparent) {
+        String traceId = null;
+        String parentSpanId = null;
+        boolean sampled = ThreadLocalRandom.current().nextDouble() < sampleRatio;
+
+        Matcher matcher = traceparent != null ? TRACEPARENT.matcher(traceparent.trim()) : null;
+        if (matcher != null && matcher.matches() && !INVALID_TRACE_ID.equals(matcher.group(1))) {
+            traceId = matcher.group(1);
+            parentSpanId = matcher.group(2);
+            sampled = (Integer.parseInt(matcher.group(3), 16) & 1) == 1;
+        }
+        if (traceId == null) {
+            traceId = randomId(16);
+        }
+
+        Trace trace = new Trace(this, traceId, sampled, maxSpansPerTrace);
+        Span root = new Span(trace, name, randomId(8), parentSpanId, CURRENT.get());
+        trace.setRoot(root);
+        CURRENT.set(root);
+        return root;
+    }
+
+    // Child of the active span, activated on this thread. Without an active span this is a no-op.
+    public Span startSpan(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        Span span = new Span(parent.getTrace(), name, randomId(8), parent.getSpanId(), parent);
+        CURRENT.set(span);
+        return span;
+    }
+
+    // Child of the active span that is not activated, for work that interleaves with other spans
+    // on the same thread, such as reading a stream a piece at a time
+    public Span startDetachedSpan(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        return new Span(parent.getTrace(), name, randomId(8), parent.getSpanId(), null);
+    }
+
+    public Span currentSpan() {
+        Span span = CURRENT.get();
+        return span != null ? span : Span.NOOP;
+    }
+
+    public String traceparent(Span span) {
+        if (span.getTrace() == null) {
+            return null;
+        }
+        return "00-" + span.getTrace().getTraceId() + "-" + span.getSpanId() + (span.getTrace().isSampled() ? "-01" : "-00");
+    }
+
+    // Times a stream from open to close; the span records bytes read and the time spent inside read calls
+    public InputStream traceStream(String name, InputStream inputStream) {
+        Span span = startDetachedSpan(name);
+        if (span == Span.NOOP) {
+            return inputStream;
+        }
+        return new TracedInputStream(inputStream, span);
+    }
+
+    // Carries the active span into work handed to another thread
+    public Runnable wrap(Runnable task) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(captured);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(Callable<T> task) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(captured);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    static void restore(Span previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    void finish(Trace trace) {
+        boolean slow = trace.getRoot().getDurationNanos() >= slowThresholdNanos;
+        if (slow) {
+            slowRequests.increment();
+            int dropped = trace.getDroppedSpans();
+            logger.warning("Slow request " + trace.getTraceId() + (dropped > 0 ? " (" + dropped + " spans dropped)" : "")
+                    + ":" + trace.render());
+        }
+        if (slow || trace.isSampled()) {
+            exporter.export(trace);
+        }
+    }
+
+    private static String randomId(int bytes) {
+        byte[] id = new byte[bytes];
+        ThreadLocalRandom.current().nextBytes(id);
+        return HexFormat.of().formatHex(id);
+    }
+
+    private static class TracedInputStream extends FilterInputStream {
+        private final Span span;
+        private long bytes;
+        private long readNanos;
+
+        TracedInputStream(InputStream in, Span span) {
+            super(in);
+            this.span = span;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            readNanos += System.nanoTime() - start;
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(b, off, len);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                span.setAttribute("bytes", bytes);
+                span.setAttribute("readMs", readNanos / 1_000_000.0);
+                span.end();
+            }
+        }
+    }
+}
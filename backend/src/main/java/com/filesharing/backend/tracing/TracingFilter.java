@@ -0,0 +1,84 @@
+package com.filesharing.backend.tracing;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Opens the root span of every request ahead of all other filters, so the security chain is part
+// of the trace. The trace id goes back in a traceparent response header. Async requests, such as
+// streamed batch downloads, end their root span when the async request completes.
+@Component
+@Profile("!reactive")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private Tracer tracer;
+
+    @Value("${tracing.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Span root = tracer.startTrace("HTTP " + request.getMethod() + " " + request.getRequestURI(),
+                request.getHeader(Tracer.TRACEPARENT_HEADER));
+        root.setAttribute("http.method", request.getMethod());
+        root.setAttribute("http.target", request.getRequestURI());
+        response.setHeader(Tracer.TRACEPARENT_HEADER, tracer.traceparent(root));
+
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            root.setAttribute("error", e.getClass().getSimpleName());
+            root.close();
+            throw e;
+        }
+
+        if (request.isAsyncStarted()) {
+            root.detach();
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    root.setAttribute("http.status_code", response.getStatus());
+                    root.end();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    root.setAttribute("error", "timeout");
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    root.setAttribute("error", String.valueOf(event.getThrowable()));
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // The listener stays registered for the dispatch that follows
+                }
+            });
+        } else {
+            root.setAttribute("http.status_code", response.getStatus());
+            root.close();
+        }
+    }
+}
@@ -681,7 +681,9 @@ const FileList: React.FC<FileListProps> = ({ files, onFileAction }) => {
             <div className="pt-4 mt-4 border-t border-gray-200 dark:border-gray-700 flex justify-between">
               <div className="text-sm text-gray-500 dark:text-gray-400">
                 <span className="font-medium">Size:</span> {formatFileSize(viewingFile.fileSize)} &bull; 
-                <span className="font-medium ml-2">Uploaded:</span> {formatDate(viewingFile.uploadDate)}
+                <span className="font-medium ml-2">Uploaded:</span> {formatDate(viewingFile.uploadDate)} &bull; 
+                <span className="font-medium ml-2">Downloads:</span> {viewingFile.downloadCount ?? 0} &bull; 
+                <span className="font-medium ml-2">Views:</span> {viewingFile.viewCount ?? 0}
               </div>
               <button
                 onClick={() => handleDownload(viewingFile.id, viewingFile.fileName)}
@@ -6,15 +6,21 @@ interface FileUploadProps {
   onFileUploaded: () => void;
 }
 
+const MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB per file
+const MAX_ARCHIVE_SIZE = 512 * 1024 * 1024; // 512MB per imported archive
+
+const isArchive = (file: File) => /\.(zip|tar|tgz|tar\.gz|tar\.bz2)$/i.test(file.name);
+
 const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
-  const [file, setFile] = useState<File | null>(null);
+  const [files, setFiles] = useState<File[]>([]);
+  const [extractArchive, setExtractArchive] = useState(true);
   const [uploading, setUploading] = useState(false);
   const [dragActive, setDragActive] = useState(false);
   const fileInputRef = useRef<HTMLInputElement>(null);
 
   const handleFileChange = (e: React.ChangeEvent<HTMLInputElement>) => {
-    if (e.target.files && e.target.files[0]) {
-      setFile(e.target.files[0]);
+    if (e.target.files && e.target.files.length > 0) {
+      setFiles(Array.from(e.target.files));
     }
   };
 
@@ -33,8 +39,8 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
     e.stopPropagation();
     setDragActive(false);
     
-    if (e.dataTransfer.files && e.dataTransfer.files[0]) {
-      setFile(e.dataTransfer.files[0]);
+    if (e.dataTransfer.files && e.dataTransfer.files.length > 0) {
+      setFiles(Array.from(e.dataTransfer.files));
     }
   };
 
@@ -42,25 +48,46 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
     fileInputRef.current?.click();
   };
 
+  const clearSelection = () => {
+    setFiles([]);
+    if (fileInputRef.current) {
+      fileInputRef.current.value = '';
+    }
+  };
+
+  // A single archive can be unpacked on the server instead of being stored as one file
+  const importMode = files.length === 1 && isArchive(files[0]) && extractArchive;
+
   const handleUpload = async () => {
-    if (!file) {
+    if (files.length === 0) {
       toast.error('Please select a file first');
       return;
     }
 
-    if (file.size > 10 * 1024 * 1024) { // 10MB in bytes
+    if (importMode) {
+      if (files[0].size > MAX_ARCHIVE_SIZE) {
+        toast.error('Archive size exceeds 512MB limit');
+        return;
+      }
+    } else if (files.some(file => file.size > MAX_FILE_SIZE)) {
       toast.error('File size exceeds 10MB limit');
       return;
     }
 
     try {
       setUploading(true);
-      await fileService.uploadFile(file);
-      toast.success('File uploaded successfully');
-      setFile(null);
-      if (fileInputRef.current) {
-        fileInputRef.current.value = '';
+      if (importMode) {
+        const imported = await fileService.importArchive(files[0]);
+        toast.success(`${imported.length} files imported`);
+      } else if (files.length === 1) {
+        await fileService.uploadFile(files[0]);
+        toast.success('File uploaded successfully');
+      } else {
+        // One request for the whole selection, the server stores the files in parallel
+        const uploaded = await fileService.uploadFiles(files);
+        toast.success(`${uploaded.length} files uploaded successfully`);
       }
+      clearSelection();
       onFileUploaded();
     } catch (error) {
       console.error('Error uploading file:', error);
@@ -71,9 +98,7 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
   };
 
   // Get file type for the icon
-  const getFileIcon = () => {
-    if (!file) return null;
-    
+  const getFileIcon = (file: File) => {
     if (file.type.startsWith('image/')) {
       return (
         <svg xmlns="http://www.w3.org/2000/svg" className="h-10 w-10 text-blue-500" viewBox="0 0 24 24" fill="none" stroke="currentColor" strokeWidth="2">
@@ -120,7 +145,7 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
 
   return (
     <div className="bg-white dark:bg-gray-800 rounded-xl shadow-lg p-6 mb-8 transform transition-all">
-      <h2 className="text-xl font-bold mb-4 text-gray-800 dark:text-white">Upload New File</h2>
+      <h2 className="text-xl font-bold mb-4 text-gray-800 dark:text-white">Upload New Files</h2>
       
       <div 
         onDragEnter={handleDrag}
@@ -137,12 +162,13 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
         <input
           ref={fileInputRef}
           type="file"
+          multiple
           onChange={handleFileChange}
           className="hidden"
           disabled={uploading}
         />
         
-        {!file ? (
+        {files.length === 0 ? (
           <div className="space-y-3">
             <svg xmlns="http://www.w3.org/2000/svg" className="h-12 w-12 mx-auto text-gray-400 dark:text-gray-500" viewBox="0 0 24 24" fill="none" stroke="currentColor" strokeWidth="2">
               <path d="M21 15v4a2 2 0 0 1-2 2H5a2 2 0 0 1-2-2v-4"></path>
@@ -150,30 +176,52 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
               <line x1="12" y1="3" x2="12" y2="15"></line>
             </svg>
             <div>
-              <p className="text-gray-700 dark:text-gray-300 font-medium">Drag and drop your file here</p>
+              <p className="text-gray-700 dark:text-gray-300 font-medium">Drag and drop your files here</p>
               <p className="text-gray-500 dark:text-gray-400 text-sm mt-1">or click to browse</p>
             </div>
-            <p className="text-xs text-gray-400 dark:text-gray-500 mt-2">Maximum file size: 10MB</p>
+            <p className="text-xs text-gray-400 dark:text-gray-500 mt-2">Maximum file size: 10MB · ZIP and TAR archives can be extracted</p>
           </div>
-        ) : (
+        ) : files.length === 1 ? (
           <div className="flex items-center justify-center space-x-4">
-            {getFileIcon()}
+            {getFileIcon(files[0])}
             <div className="text-left">
-              <p className="font-medium text-gray-800 dark:text-gray-200 truncate max-w-xs">{file.name}</p>
-              <p className="text-sm text-gray-500 dark:text-gray-400">{(file.size / 1024 / 1024).toFixed(2)} MB</p>
+              <p className="font-medium text-gray-800 dark:text-gray-200 truncate max-w-xs">{files[0].name}</p>
+              <p className="text-sm text-gray-500 dark:text-gray-400">{(files[0].size / 1024 / 1024).toFixed(2)} MB</p>
             </div>
           </div>
+        ) : (
+          <div className="text-left max-w-md mx-auto">
+            <p className="font-medium text-gray-800 dark:text-gray-200">
+              {files.length} files · {(files.reduce((total, file) => total + file.size, 0) / 1024 / 1024).toFixed(2)} MB
+            </p>
+            <ul className="mt-2 text-sm text-gray-500 dark:text-gray-400 space-y-1">
+              {files.slice(0, 5).map((file, index) => (
+                <li key={index} className="truncate">{file.name}</li>
+              ))}
+              {files.length > 5 && <li>and {files.length - 5} more</li>}
+            </ul>
+          </div>
         )}
       </div>
+
+      {files.length === 1 && isArchive(files[0]) && (
+        <label className="mt-3 flex items-center text-sm text-gray-700 dark:text-gray-300">
+          <input
+            type="checkbox"
+            checked={extractArchive}
+            onChange={(e) => setExtractArchive(e.target.checked)}
+            disabled={uploading}
+            className="mr-2"
+          />
+          Extract archive contents into separate files
+        </label>
+      )}
       
       <div className="mt-4 flex justify-end">
-        {file && (
+        {files.length > 0 && (
           <>
             <button
-              onClick={() => {
-                setFile(null);
-                if (fileInputRef.current) fileInputRef.current.value = '';
-              }}
+              onClick={clearSelection}
               className="px-4 py-2 mr-2 text-gray-700 dark:text-gray-300 border border-gray-300 dark:border-gray-600 rounded-lg hover:bg-gray-50 dark:hover:bg-gray-700 transition-colors"
               disabled={uploading}
             >
@@ -181,9 +229,9 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
             </button>
             <button
               onClick={handleUpload}
-              disabled={!file || uploading}
+              disabled={files.length === 0 || uploading}
               className={`px-6 py-2 rounded-lg text-white font-medium shadow-md transition-all ${
-                !file || uploading
+                files.length === 0 || uploading
                   ? 'bg-blue-400 dark:bg-blue-500 cursor-not-allowed'
                   : 'bg-blue-600 dark:bg-blue-700 hover:bg-blue-700 dark:hover:bg-blue-800 hover:shadow-lg'
               }`}
@@ -196,6 +244,8 @@ const FileUpload: React.FC<FileUploadProps> = ({ onFileUploaded }) => {
                   </svg>
                   Uploading...
                 </div>
+              ) : importMode ? (
+                'Import'
               ) : (
                 'Upload'
               )}
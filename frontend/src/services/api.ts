@@ -1,4 +1,4 @@
-import axios from 'axios';
+import axios, { AxiosError, InternalAxiosRequestConfig } from 'axios';
 import { AuthResponse, LoginRequest, RegisterRequest, FileInfo } from '../types';
 
 const API_URL = process.env.REACT_APP_API_URL || 'http://localhost:8080/api';
@@ -25,6 +25,72 @@ api.interceptors.request.use(
   }
 );
 
+// Access tokens are short-lived: on a 401, renew once with the refresh token and replay the request.
+// Concurrent failures share a single refresh call because refresh tokens are single-use.
+let refreshPromise: Promise<string> | null = null;
+
+// Other tabs share localStorage, so one of them may rotate the same refresh token a moment earlier.
+// The server then refuses this tab's refresh; the other tab's new tokens are used once they are stored.
+const tokenRotatedByOtherTab = async (staleRefreshToken: string): Promise<string | null> => {
+  for (let waited = 0; waited <= 2000; waited += 100) {
+    const refreshToken = localStorage.getItem('refreshToken');
+    const token = localStorage.getItem('token');
+    if (refreshToken && refreshToken !== staleRefreshToken && token) {
+      return token;
+    }
+    await new Promise((resolve) => setTimeout(resolve, 100));
+  }
+  return null;
+};
+
+const refreshAccessToken = async (): Promise<string> => {
+  const refreshToken = localStorage.getItem('refreshToken');
+  if (!refreshToken) {
+    throw new Error('No refresh token');
+  }
+  try {
+    const response = await axios.post<AuthResponse>(`${API_URL}/auth/refresh`, { refreshToken });
+    localStorage.setItem('token', response.data.token);
+    localStorage.setItem('refreshToken', response.data.refreshToken);
+    return response.data.token;
+  } catch (error) {
+    const token = axios.isAxiosError(error) && error.response?.status === 401
+      ? await tokenRotatedByOtherTab(refreshToken)
+      : null;
+    if (token) {
+      return token;
+    }
+    throw error;
+  }
+};
+
+api.interceptors.response.use(
+  (response) => response,
+  async (error: AxiosError) => {
+    const original = error.config as (InternalAxiosRequestConfig & { _retry?: boolean }) | undefined;
+    const isAuthCall = original?.url?.startsWith('/auth/');
+    if (error.response?.status !== 401 || !original || original._retry || isAuthCall) {
+      return Promise.reject(error);
+    }
+
+    original._retry = true;
+    try {
+      refreshPromise = refreshPromise || refreshAccessToken();
+      const token = await refreshPromise;
+      original.headers['Authorization'] = `Bearer ${token}`;
+      return api(original);
+    } catch (refreshError) {
+      localStorage.removeItem('token');
+      localStorage.removeItem('refreshToken');
+      localStorage.removeItem('user');
+      window.location.href = '/login';
+      return Promise.reject(refreshError);
+    } finally {
+      refreshPromise = null;
+    }
+  }
+);
+
 // Auth related API calls
 export const authService = {
   login: async (data: LoginRequest): Promise<AuthResponse> => {
@@ -37,9 +103,17 @@ export const authService = {
     return response.data;
   },
 
-  logout: (): void => {
-    localStorage.removeItem('token');
-    localStorage.removeItem('user');
+  logout: async (): Promise<void> => {
+    const refreshToken = localStorage.getItem('refreshToken');
+    try {
+      await api.post('/auth/logout', { refreshToken });
+    } catch (error) {
+      console.error('Logout request failed', error);
+    } finally {
+      localStorage.removeItem('token');
+      localStorage.removeItem('refreshToken');
+      localStorage.removeItem('user');
+    }
   }
 };
 
@@ -62,6 +136,30 @@ export const fileService = {
     return response.data;
   },
 
+  uploadFiles: async (files: File[]): Promise<FileInfo[]> => {
+    const formData = new FormData();
+    files.forEach(file => formData.append('files', file));
+
+    const response = await api.post<FileInfo[]>('/files/upload-multiple', formData, {
+      headers: {
+        'Content-Type': 'multipart/form-data'
+      }
+    });
+    return response.data;
+  },
+
+  importArchive: async (archive: File): Promise<FileInfo[]> => {
+    const formData = new FormData();
+    formData.append('file', archive);
+
+    const response = await api.post<FileInfo[]>('/files/import', formData, {
+      headers: {
+        'Content-Type': 'multipart/form-data'
+      }
+    });
+    return response.data;
+  },
+
   downloadFile: async (fileId: number): Promise<Blob> => {
     const response = await api.get<Blob>(`/files/download/${fileId}`, {
       responseType: 'blob'
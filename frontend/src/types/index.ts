@@ -19,6 +19,8 @@ export interface RegisterRequest {
 export interface AuthResponse {
   token: string;
   type: string;
+  refreshToken: string;
+  expiresIn: number;
   id: number;
   username: string;
   email: string;
@@ -33,4 +35,6 @@ export interface FileInfo {
   uploadDate: string;
   deleted?: boolean;
   deletedAt?: string;
+  downloadCount?: number;
+  viewCount?: number;
 } 
\ No newline at end of file